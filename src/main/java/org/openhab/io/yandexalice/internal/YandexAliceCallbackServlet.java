@@ -43,8 +43,8 @@ public class YandexAliceCallbackServlet extends HttpServlet {
         logger.debug("Get servlet: {}", req.getPathInfo());
         resp.setContentType(MediaType.APPLICATION_JSON);
         resp.setCharacterEncoding("utf-8");
-        resp.getWriter().print(YandexService.getItemsList(req.getHeader("X-Request-Id")));
         resp.setStatus(HttpServletResponse.SC_OK);
+        YandexService.writeItemsList(req.getHeader("X-Request-Id"), resp.getOutputStream());
     }
 
     @Override
@@ -56,22 +56,18 @@ public class YandexAliceCallbackServlet extends HttpServlet {
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         logger.debug("POST servlet: {}", req.getRequestURI());
-        String body = req.getReader().lines().reduce("", String::concat);
-        logger.debug("POST request from Yandex: {}", body);
-        String answer = "";
+        resp.setContentType(MediaType.APPLICATION_JSON);
+        resp.setCharacterEncoding("utf-8");
+        resp.setStatus(HttpServletResponse.SC_OK);
         if (req.getRequestURI() != null) {
             String reqUri = req.getRequestURI();
             if (("/yandex/v1.0/user/devices/query").equals(reqUri)) {
-                logger.debug("Requesting item state from Yandex: {}", body);
-                answer = YandexService.getItemState(body, req.getHeader("X-Request-Id"));
+                YandexService.writeItemState(req.getInputStream(), req.getHeader("X-Request-Id"),
+                        resp.getOutputStream());
             } else if (("/yandex/v1.0/user/devices/action").equals(reqUri)) {
-                logger.debug("Action item from Yandex: {}", body);
-                answer = YandexService.setItemState(body, req.getHeader("X-Request-Id"));
+                YandexService.writeActionResult(req.getInputStream(), req.getHeader("X-Request-Id"),
+                        resp.getOutputStream());
             }
         }
-        resp.setContentType(MediaType.APPLICATION_JSON);
-        resp.setCharacterEncoding("utf-8");
-        resp.getWriter().print(answer);
-        resp.setStatus(HttpServletResponse.SC_OK);
     }
 }
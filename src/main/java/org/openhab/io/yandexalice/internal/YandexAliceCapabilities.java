@@ -12,13 +12,14 @@
  */
 package org.openhab.io.yandexalice.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.openhab.core.types.State;
 
 /**
  * The {@link YandexAliceCapabilities} model for Yandex capabilities
@@ -35,23 +36,22 @@ public class YandexAliceCapabilities {
     private int minRange;
     private String ohID;
     private String scenesOhID;
-    @Nullable
-    private State state = null;
-    JSONArray modes = new JSONArray();
-    JSONArray scenesList = new JSONArray();
+    private int slot = -1;
+    private List<String> modes = List.of();
+    private List<String> scenesList = List.of();
+    private volatile byte @Nullable [] discovery;
     // private JSONObject temperatureK = new JSONObject();
 
     private ColorSettingsTemperature temperatureK = new ColorSettingsTemperature();
     private ColorSettingsModel colorSettingsModel = new ColorSettingsModel();
 
-    public JSONArray getModes() {
+    public List<String> getModes() {
         return modes;
     }
 
     public void setModes(Collection<String> modesList) {
-        JSONArray modes = new JSONArray();
-        modesList.forEach((md) -> modes.put(new JSONObject().put("value", md)));
-        this.modes = modes;
+        this.modes = List.copyOf(modesList);
+        discovery = null;
     }
 
     public YandexAliceCapabilities() {
@@ -71,6 +71,7 @@ public class YandexAliceCapabilities {
 
     public void addCapability(String capability) {
         this.capabilityName = capability;
+        discovery = null;
     }
 
     public String getCapabilityName() {
@@ -83,16 +84,19 @@ public class YandexAliceCapabilities {
 
     public void setInstance(String instance) {
         this.instance = instance;
+        discovery = null;
     }
 
     public void setUnit(String unit) {
         this.unit = unit;
+        discovery = null;
     }
 
     public void setRange(int minRange, int maxRange, double precisionRange) {
         this.minRange = minRange;
         this.maxRange = maxRange;
         this.precisionRange = precisionRange;
+        discovery = null;
     }
 
     public int getMinRange() {
@@ -111,22 +115,34 @@ public class YandexAliceCapabilities {
         return unit;
     }
 
-    public @Nullable State getState() {
-        return state;
+    /**
+     * Returns the value cache slot of the capability, or -1 before the device is indexed.
+     */
+    public int getSlot() {
+        return slot;
     }
 
-    public void setState(State state) {
-        this.state = state;
+    /**
+     * Returns the value cache slot of the color temperature, or -1 before the device is indexed.
+     */
+    public int getTemperatureSlot() {
+        return slot < 0 ? -1 : slot + 1;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
     }
 
     public void setScenesList(Collection<String> scenesList) {
-        scenesList.forEach((scn) -> {
-            this.scenesList.put(new JSONObject().put("id", scn));
-        });
+        List<String> scenes = new ArrayList<>(this.scenesList);
+        scenes.addAll(scenesList);
+        this.scenesList = List.copyOf(scenes);
+        discovery = null;
     }
 
     public void setTemperatureK(ColorSettingsTemperature temperatureK) {
         this.temperatureK = temperatureK;
+        discovery = null;
         // temperatureK.setOhID(ohID);
         // temperatureK.setTemp(true);
     }
@@ -135,7 +151,7 @@ public class YandexAliceCapabilities {
         return temperatureK;
     }
 
-    public JSONArray getScenesList() {
+    public List<String> getScenesList() {
         return scenesList;
     }
 
@@ -149,17 +165,69 @@ public class YandexAliceCapabilities {
 
     public void setColorModel(ColorSettingsModel colorSettingsModel) {
         this.colorSettingsModel = colorSettingsModel;
+        discovery = null;
     }
 
     public ColorSettingsModel getColorModel() {
         return colorSettingsModel;
     }
 
+    /**
+     * Writes the capability description of the devices discovery response. The description is encoded on first use,
+     * once the device is built, and reused until a setter changes it.
+     */
+    public void writeDiscovery(YandexJsonWriter writer) throws IOException {
+        byte[] discovery = this.discovery;
+        if (discovery == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(YandexJsonWriter.FRAGMENT_SIZE);
+            writeDescription(new YandexJsonWriter(out, YandexJsonWriter.FRAGMENT_SIZE));
+            discovery = out.toByteArray();
+            this.discovery = discovery;
+        }
+        writer.raw(discovery);
+    }
+
+    private void writeDescription(YandexJsonWriter writer) throws IOException {
+        writer.beginObject().name("type").value(capabilityName).name("parameters").beginObject();
+        switch (capabilityName) {
+            case YandexDevice.CAP_RANGE:
+                writer.name("instance").value(instance).name("range").beginObject().name("min").value(minRange)
+                        .name("max").value(maxRange).name("precision").value(precisionRange).endObject()
+                        .name("unit").value(unit);
+                break;
+            case YandexDevice.CAP_COLOR_SETTINGS:
+                if (colorSettingsModel.isModel()) {
+                    writer.name("color_model").value("hsv");
+                }
+                if (temperatureK.isTemp()) {
+                    writer.name("temperature_k").beginObject().name("min").value(1500).name("max").value(9000)
+                            .endObject();
+                }
+                if (!scenesList.isEmpty()) {
+                    writer.name("color_scene").beginObject().name("scenes").beginArray();
+                    for (String scene : scenesList) {
+                        writer.beginObject().name("id").value(scene).endObject();
+                    }
+                    writer.endArray().endObject();
+                }
+                break;
+            case YandexDevice.CAP_MODE:
+                writer.name("instance").value(instance).name("modes").beginArray();
+                for (String mode : modes) {
+                    writer.beginObject().name("value").value(mode).endObject();
+                }
+                writer.endArray();
+                break;
+            case YandexDevice.CAP_TOGGLE:
+                writer.name("instance").value(instance);
+                break;
+        }
+        writer.endObject().name("retrievable").value(true).name("reportable").value(true).endObject().flush();
+    }
+
     public static class ColorSettingsTemperature {
         private String ohID = "";
         private boolean isTemp;
-        @Nullable
-        private State state;
 
         public String getOhID() {
             return ohID;
@@ -176,21 +244,11 @@ public class YandexAliceCapabilities {
         public void setTemp(boolean temp) {
             isTemp = temp;
         }
-
-        public @Nullable State getState() {
-            return state;
-        }
-
-        public void setState(State state) {
-            this.state = state;
-        }
     }
 
     public static class ColorSettingsModel {
         private String ohID = "";
         private boolean isModel;
-        @Nullable
-        private State state;
 
         public String getOhID() {
             return ohID;
@@ -207,13 +265,5 @@ public class YandexAliceCapabilities {
         public void setModel(boolean isModel) {
             this.isModel = isModel;
         }
-
-        public @Nullable State getState() {
-            return state;
-        }
-
-        public void setState(State state) {
-            this.state = state;
-        }
     }
 }
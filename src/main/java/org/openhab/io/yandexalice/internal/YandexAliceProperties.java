@@ -12,11 +12,13 @@
  */
 package org.openhab.io.yandexalice.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.openhab.core.types.State;
 
 /**
  * The {@link YandexAliceProperties} model for Yandex properties
@@ -25,50 +27,26 @@ import org.openhab.core.types.State;
  */
 @NonNullByDefault
 public class YandexAliceProperties {
-    private String propName;
-    private String instance;
-    private String unit = "";
-    private String ohItemID = "";
-    private JSONArray events = new JSONArray();
-    @Nullable
-    private State state = null;
+    private static final Map<String, List<String>> EVENTS = Map.of(YandexDevice.EVENT_OPEN,
+            List.of("opened", "closed"), YandexDevice.EVENT_MOTION, List.of("detected", "not_detected"),
+            YandexDevice.EVENT_WATER_LEAK, List.of("dry", "leak"), YandexDevice.EVENT_SMOKE,
+            List.of("detected", "not_detected", "high"), YandexDevice.EVENT_GAS,
+            List.of("detected", "not_detected", "high"), YandexDevice.EVENT_BATTERY_LEVEL, List.of("low", "normal"),
+            YandexDevice.EVENT_BUTTON, List.of("click", "double_click", "long_press"));
+    private final String propName;
+    private final String instance;
+    private final String unit;
+    private final String ohItemID;
+    private final List<String> events;
+    private volatile byte @Nullable [] discovery;
+    private int slot = -1;
 
     public YandexAliceProperties(String ohItemID, String propName, String instance, String unit) {
         this.propName = propName;
         this.instance = instance;
         this.unit = unit;
         this.ohItemID = ohItemID;
-        if (propName.equals(YandexDevice.PROP_EVENT)) {
-            switch (instance) {
-                case YandexDevice.EVENT_OPEN:
-                    events = new JSONArray().put(new JSONObject().put("value", "opened"))
-                            .put(new JSONObject().put("value", "closed"));
-                    break;
-                case YandexDevice.EVENT_MOTION:
-                    events = new JSONArray().put(new JSONObject().put("value", "detected"))
-                            .put(new JSONObject().put("value", "not_detected"));
-                    break;
-                case YandexDevice.EVENT_WATER_LEAK:
-                    events = new JSONArray().put(new JSONObject().put("value", "dry"))
-                            .put(new JSONObject().put("value", "leak"));
-                    break;
-                case YandexDevice.EVENT_SMOKE:
-                case YandexDevice.EVENT_GAS:
-                    events = new JSONArray().put(new JSONObject().put("value", "detected"))
-                            .put(new JSONObject().put("value", "not_detected"))
-                            .put(new JSONObject().put("value", "high"));
-                    break;
-                case YandexDevice.EVENT_BATTERY_LEVEL:
-                    events = new JSONArray().put(new JSONObject().put("value", "low"))
-                            .put(new JSONObject().put("value", "normal"));
-                    break;
-                case YandexDevice.EVENT_BUTTON:
-                    events = new JSONArray().put(new JSONObject().put("value", "click"))
-                            .put(new JSONObject().put("value", "double_click"))
-                            .put(new JSONObject().put("value", "long_press"));
-                    break;
-            }
-        }
+        this.events = propName.equals(YandexDevice.PROP_EVENT) ? EVENTS.getOrDefault(instance, List.of()) : List.of();
     }
 
     public String getOhID() {
@@ -76,24 +54,7 @@ public class YandexAliceProperties {
     }
 
     public YandexAliceProperties(String propName, String instance) {
-        this.propName = propName;
-        this.instance = instance;
-        if (propName.equals(YandexDevice.PROP_EVENT)) {
-            switch (instance) {
-                case YandexDevice.EVENT_OPEN:
-                    events = new JSONArray().put(new JSONObject().put("value", "opened"))
-                            .put(new JSONObject().put("value", "closed"));
-                    break;
-                case YandexDevice.EVENT_MOTION:
-                    events = new JSONArray().put(new JSONObject().put("value", "detected"))
-                            .put(new JSONObject().put("value", "not_detected"));
-                    break;
-                case YandexDevice.EVENT_WATER_LEAK:
-                    events = new JSONArray().put(new JSONObject().put("value", "dry"))
-                            .put(new JSONObject().put("value", "leak"));
-                    break;
-            }
-        }
+        this("", propName, instance, "");
     }
 
     public String getPropName() {
@@ -108,15 +69,48 @@ public class YandexAliceProperties {
         return unit;
     }
 
-    public JSONArray getEvents() {
+    public List<String> getEvents() {
         return events;
     }
 
-    public @Nullable State getState() {
-        return state;
+    /**
+     * Writes the property description of the devices discovery response. Only float and event properties are
+     * described; the description is encoded once and reused.
+     */
+    public void writeDiscovery(YandexJsonWriter writer) throws IOException {
+        byte[] discovery = this.discovery;
+        if (discovery == null) {
+            if (!propName.equals(YandexDevice.PROP_EVENT) && !propName.equals(YandexDevice.PROP_FLOAT)) {
+                return;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(YandexJsonWriter.FRAGMENT_SIZE);
+            YandexJsonWriter fragment = new YandexJsonWriter(out, YandexJsonWriter.FRAGMENT_SIZE);
+            fragment.beginObject().name("type").value(propName).name("parameters").beginObject().name("instance")
+                    .value(instance);
+            if (propName.equals(YandexDevice.PROP_EVENT)) {
+                fragment.name("events").beginArray();
+                for (String event : events) {
+                    fragment.beginObject().name("value").value(event).endObject();
+                }
+                fragment.endArray();
+            } else {
+                fragment.name("unit").value(unit);
+            }
+            fragment.endObject().name("retrievable").value(true).name("reportable").value(true).endObject().flush();
+            discovery = out.toByteArray();
+            this.discovery = discovery;
+        }
+        writer.raw(discovery);
+    }
+
+    /**
+     * Returns the value cache slot of the property, or -1 before the device is indexed.
+     */
+    public int getSlot() {
+        return slot;
     }
 
-    public void setState(State state) {
-        this.state = state;
+    void setSlot(int slot) {
+        this.slot = slot;
     }
 }
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The {@link YandexCallbackBatcher} collects device states for a short window and passes them on as one
+ * callback/state batch. A later state of the same device capability or property overwrites the earlier one.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexCallbackBatcher {
+    public static final int DEFAULT_WINDOW = 250;
+    public static final int DEFAULT_MAX_DEVICES = 100;
+    private final LinkedHashMap<String, DeviceStates> pending = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<Map<String, DeviceStates>> sink;
+    private @Nullable ScheduledFuture<?> flushJob;
+    private volatile int window = DEFAULT_WINDOW;
+    private volatile int maxDevices = DEFAULT_MAX_DEVICES;
+
+    public YandexCallbackBatcher(ScheduledExecutorService scheduler, Consumer<Map<String, DeviceStates>> sink) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    public void setLimits(int window, int maxDevices) {
+        this.window = Math.max(0, window);
+        this.maxDevices = Math.max(1, maxDevices);
+    }
+
+    public void add(String id, DeviceStates states) {
+        boolean flushNow = false;
+        synchronized (pending) {
+            pending.computeIfAbsent(id, k -> new DeviceStates()).putAll(states);
+            if (window == 0 || pending.size() >= maxDevices) {
+                flushNow = true;
+            } else if (flushJob == null) {
+                flushJob = scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        Map<String, DeviceStates> batch = new LinkedHashMap<>();
+        synchronized (pending) {
+            ScheduledFuture<?> job = flushJob;
+            if (job != null) {
+                job.cancel(false);
+                flushJob = null;
+            }
+            pending.forEach((id, states) -> {
+                if (!states.isEmpty()) {
+                    batch.put(id, states);
+                }
+            });
+            pending.clear();
+        }
+        if (!batch.isEmpty()) {
+            sink.accept(batch);
+        }
+    }
+
+    /**
+     * Stops the batcher and passes the pending states on at once.
+     */
+    public void stop() {
+        flush();
+    }
+
+    /**
+     * Encoded capability and property states of one device, keyed by type and instance.
+     */
+    static class DeviceStates {
+        final LinkedHashMap<String, byte[]> capabilities = new LinkedHashMap<>();
+        final LinkedHashMap<String, byte[]> properties = new LinkedHashMap<>();
+
+        /**
+         * Adds the states of a device object read back from JSON.
+         */
+        void put(JSONObject device) {
+            put(capabilities, device.optJSONArray("capabilities"));
+            put(properties, device.optJSONArray("properties"));
+        }
+
+        void putAll(DeviceStates states) {
+            capabilities.putAll(states.capabilities);
+            properties.putAll(states.properties);
+        }
+
+        void removeAll(DeviceStates states) {
+            capabilities.keySet().removeAll(states.capabilities.keySet());
+            properties.keySet().removeAll(states.properties.keySet());
+        }
+
+        void clear() {
+            capabilities.clear();
+            properties.clear();
+        }
+
+        boolean isEmpty() {
+            return capabilities.isEmpty() && properties.isEmpty();
+        }
+
+        private static void put(LinkedHashMap<String, byte[]> target, @Nullable JSONArray states) {
+            if (states != null) {
+                for (int i = 0; i < states.length(); i++) {
+                    JSONObject st = states.getJSONObject(i);
+                    target.put(st.optString("type") + ":" + st.getJSONObject("state").optString("instance"),
+                            st.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link YandexCallbackDispatcher} queues state callbacks and sends them to Yandex with a limited number of
+ * concurrent requests. Pending updates with the same key are merged (the latest one wins), and when the queue is
+ * full the oldest pending update is dropped.
+ * <p>
+ * Device states of a failed callback are kept for a retry with exponential backoff and jitter. A newer state of the
+ * same capability or property replaces the one waiting for the retry, and a failed state is not retried at all if a
+ * later callback carries the same capability or property. When a journal file is set, the states waiting for a retry
+ * are written to it and sent in one callback after a restart.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexCallbackDispatcher {
+    public static final int DEFAULT_QUEUE_SIZE = 500;
+    public static final int DEFAULT_CONCURRENT_REQUESTS = 4;
+    private static final long RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 300000;
+    private static final String RETRY_KEY = "retry:";
+    private final Logger logger = LoggerFactory.getLogger(YandexCallbackDispatcher.class);
+    private final Map<String, Map<String, YandexCallbackBatcher.DeviceStates>> pending = new LinkedHashMap<>();
+    private final LinkedHashMap<String, YandexCallbackBatcher.DeviceStates> retry = new LinkedHashMap<>();
+    private final Set<Map<String, YandexCallbackBatcher.DeviceStates>> sending = Collections
+            .newSetFromMap(new IdentityHashMap<>());
+    // the last batch queued with a device state, keyed by device id and state key
+    private final Map<String, Map<String, YandexCallbackBatcher.DeviceStates>> latest = new HashMap<>();
+    private final YandexCallbackUpdate callbackUpdate;
+    private final ScheduledExecutorService scheduler;
+    private final String userId;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private volatile int queueSize;
+    private volatile int concurrentRequests;
+    private @Nullable ScheduledFuture<?> retryJob;
+    private int retryAttempt;
+    private @Nullable Path journal;
+    private volatile boolean stopped;
+
+    public YandexCallbackDispatcher(YandexCallbackUpdate callbackUpdate, ScheduledExecutorService scheduler,
+            String userId, int queueSize, int concurrentRequests) {
+        this.callbackUpdate = callbackUpdate;
+        this.scheduler = scheduler;
+        this.userId = userId;
+        setLimits(queueSize, concurrentRequests);
+    }
+
+    public void setLimits(int queueSize, int concurrentRequests) {
+        this.queueSize = Math.max(1, queueSize);
+        this.concurrentRequests = Math.max(1, concurrentRequests);
+    }
+
+    /**
+     * Sets the file keeping the states waiting for a retry, or null to keep them in memory only. States found in
+     * the file are sent at once.
+     */
+    public void setJournal(@Nullable Path journal) {
+        synchronized (retry) {
+            if (journal != null && !journal.equals(this.journal)) {
+                readJournal(journal);
+            }
+            this.journal = journal;
+            if (!retry.isEmpty()) {
+                scheduleRetry(0);
+            }
+        }
+    }
+
+    public void submit(Map<String, YandexCallbackBatcher.DeviceStates> batch) {
+        StringBuilder key = new StringBuilder();
+        synchronized (retry) {
+            for (Map.Entry<String, YandexCallbackBatcher.DeviceStates> e : batch.entrySet()) {
+                YandexCallbackBatcher.DeviceStates states = retry.get(e.getKey());
+                if (states != null) {
+                    states.removeAll(e.getValue());
+                    if (states.isEmpty()) {
+                        retry.remove(e.getKey());
+                    }
+                }
+                key.append(e.getKey());
+                e.getValue().capabilities.keySet().forEach(k -> key.append('|').append(k));
+                e.getValue().properties.keySet().forEach(k -> key.append('|').append(k));
+                key.append(';');
+            }
+            // queued while the retry states are locked, so a failing older batch sees this one as newer
+            enqueue(key.toString(), batch);
+        }
+        pump();
+    }
+
+    /**
+     * Queues a batch under its key: device ids with the capabilities and properties they carry. A later batch with
+     * the same key supersedes a pending one and takes its place at the end of the queue.
+     */
+    private void enqueue(String key, Map<String, YandexCallbackBatcher.DeviceStates> batch) {
+        synchronized (pending) {
+            if (stopped) {
+                logger.debug("Callback dispatcher is stopped, dropping update {}", key);
+                return;
+            }
+            // the newer batch goes to the tail, so it is not sent before batches queued after the one it replaces
+            if (pending.remove(key) != null) {
+                merged.incrementAndGet();
+            } else if (pending.size() >= queueSize) {
+                Iterator<Map.Entry<String, Map<String, YandexCallbackBatcher.DeviceStates>>> oldest = pending
+                        .entrySet().iterator();
+                Map.Entry<String, Map<String, YandexCallbackBatcher.DeviceStates>> entry = oldest.next();
+                logger.debug("Callback queue is full, dropping update {}", entry.getKey());
+                oldest.remove();
+                forget(entry.getValue());
+                dropped.incrementAndGet();
+            }
+            pending.put(key, batch);
+            batch.forEach((id, states) -> {
+                states.capabilities.keySet().forEach(k -> latest.put(id + '|' + k, batch));
+                states.properties.keySet().forEach(k -> latest.put(id + '|' + k, batch));
+            });
+        }
+    }
+
+    /**
+     * Removes the batch as the latest one of its states, the caller holds the pending lock.
+     */
+    private void forget(Map<String, YandexCallbackBatcher.DeviceStates> batch) {
+        batch.forEach((id, states) -> {
+            states.capabilities.keySet().forEach(k -> latest.remove(id + '|' + k, batch));
+            states.properties.keySet().forEach(k -> latest.remove(id + '|' + k, batch));
+        });
+    }
+
+    private void pump() {
+        while (true) {
+            Map<String, YandexCallbackBatcher.DeviceStates> batch;
+            synchronized (pending) {
+                Iterator<Map<String, YandexCallbackBatcher.DeviceStates>> it = pending.values().iterator();
+                if (stopped || inFlight.get() >= concurrentRequests || !it.hasNext()) {
+                    return;
+                }
+                batch = it.next();
+                it.remove();
+                sending.add(batch);
+                inFlight.incrementAndGet();
+            }
+            byte[] json;
+            try {
+                json = YandexCallbackEncoder.encodeCallback(userId, batch);
+            } catch (IOException e) {
+                logger.debug("Cannot encode callback: {}", e.getMessage());
+                synchronized (pending) {
+                    sending.remove(batch);
+                    forget(batch);
+                }
+                inFlight.decrementAndGet();
+                continue;
+            }
+            // leave the HTTP client threads as soon as the response is there
+            callbackUpdate.send(json, code -> {
+                try {
+                    scheduler.execute(() -> finished(batch, code));
+                } catch (RejectedExecutionException e) {
+                    // the pool refuses work while shutting down, the slot must be freed anyway
+                    finished(batch, code);
+                }
+            });
+        }
+    }
+
+    private void finished(Map<String, YandexCallbackBatcher.DeviceStates> batch, int code) {
+        synchronized (pending) {
+            // the batch of a request aborted by stop() is already in the journal
+            if (!sending.remove(batch)) {
+                return;
+            }
+        }
+        inFlight.decrementAndGet();
+        completed(batch, code);
+        pump();
+    }
+
+    private void completed(Map<String, YandexCallbackBatcher.DeviceStates> batch, int code) {
+        synchronized (retry) {
+            Map<String, YandexCallbackBatcher.DeviceStates> failed = new LinkedHashMap<>();
+            synchronized (pending) {
+                // states a later batch carries, queued, in flight or already sent, must not be sent again
+                batch.forEach((id, states) -> {
+                    YandexCallbackBatcher.DeviceStates kept = new YandexCallbackBatcher.DeviceStates();
+                    states.capabilities.forEach((k, v) -> {
+                        if (latest.get(id + '|' + k) == batch) {
+                            kept.capabilities.put(k, v);
+                        }
+                    });
+                    states.properties.forEach((k, v) -> {
+                        if (latest.get(id + '|' + k) == batch) {
+                            kept.properties.put(k, v);
+                        }
+                    });
+                    if (!kept.isEmpty()) {
+                        failed.put(id, kept);
+                    }
+                });
+                forget(batch);
+            }
+            if (code >= 200 && code < 300) {
+                retryAttempt = 0;
+            } else if (failed.isEmpty()) {
+                logger.debug("Callback failed with code {}, newer states are already queued", code);
+            } else if (code == 0 || code == 429 || code >= 500) {
+                addRetry(failed);
+                long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(retryAttempt, 20));
+                retryAttempt++;
+                scheduleRetry(ThreadLocalRandom.current().nextLong(delay / 2, delay + 1));
+                writeJournal();
+            } else {
+                logger.debug("Callback rejected with code {}, dropping it", code);
+            }
+        }
+    }
+
+    private void addRetry(Map<String, YandexCallbackBatcher.DeviceStates> batch) {
+        for (Map.Entry<String, YandexCallbackBatcher.DeviceStates> e : batch.entrySet()) {
+            String id = e.getKey();
+            YandexCallbackBatcher.DeviceStates states = retry.get(id);
+            if (states == null) {
+                if (retry.size() >= queueSize) {
+                    Iterator<String> oldest = retry.keySet().iterator();
+                    logger.debug("Retry queue is full, dropping device {}", oldest.next());
+                    oldest.remove();
+                    dropped.incrementAndGet();
+                }
+                states = new YandexCallbackBatcher.DeviceStates();
+                retry.put(id, states);
+            }
+            // states waiting for the retry are newer than the failed ones
+            YandexCallbackBatcher.DeviceStates failed = new YandexCallbackBatcher.DeviceStates();
+            failed.putAll(e.getValue());
+            failed.putAll(states);
+            states.putAll(failed);
+        }
+    }
+
+    private void scheduleRetry(long delay) {
+        if (retryJob == null && !stopped) {
+            logger.debug("Retrying {} device states in {} ms", retry.size(), delay);
+            retryJob = scheduler.schedule(this::sendRetry, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void sendRetry() {
+        Map<String, YandexCallbackBatcher.DeviceStates> batch;
+        synchronized (retry) {
+            retryJob = null;
+            if (retry.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<>(retry);
+            retried.addAndGet(retry.size());
+            retry.clear();
+            writeJournal();
+            enqueue(RETRY_KEY + retried.get(), batch);
+        }
+        pump();
+    }
+
+    private void readJournal(Path journal) {
+        if (Files.isRegularFile(journal)) {
+            try {
+                JSONArray devices = new JSONObject(Files.readString(journal, StandardCharsets.UTF_8))
+                        .getJSONArray("devices");
+                Map<String, YandexCallbackBatcher.DeviceStates> saved = new LinkedHashMap<>();
+                for (int i = 0; i < devices.length(); i++) {
+                    JSONObject device = devices.getJSONObject(i);
+                    saved.computeIfAbsent(device.getString("id"), id -> new YandexCallbackBatcher.DeviceStates())
+                            .put(device);
+                }
+                addRetry(saved);
+                logger.debug("Read {} device states from callback journal", retry.size());
+            } catch (IOException | JSONException e) {
+                logger.warn("Cannot read callback journal {}: {}", journal, e.getMessage());
+            }
+        }
+    }
+
+    private void writeJournal() {
+        Path journal = this.journal;
+        if (journal != null) {
+            try {
+                if (retry.isEmpty()) {
+                    Files.deleteIfExists(journal);
+                } else {
+                    Files.createDirectories(journal.getParent());
+                    try (OutputStream out = Files.newOutputStream(journal)) {
+                        YandexJsonWriter writer = new YandexJsonWriter(out);
+                        writer.beginObject().name("devices").beginArray();
+                        for (Map.Entry<String, YandexCallbackBatcher.DeviceStates> e : retry.entrySet()) {
+                            YandexCallbackEncoder.writeDevice(writer, e.getKey(), e.getValue());
+                        }
+                        writer.endArray().endObject().flush();
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot write callback journal {}: {}", journal, e.getMessage());
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getRetryDepth() {
+        synchronized (retry) {
+            return retry.size();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getMerged() {
+        return merged.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * Stops sending. Updates still queued or in flight are added to the states waiting for a retry, so they are kept
+     * in the journal, and responses arriving later are ignored.
+     */
+    public void stop() {
+        List<Map<String, YandexCallbackBatcher.DeviceStates>> queued;
+        synchronized (pending) {
+            stopped = true;
+            queued = new ArrayList<>(sending);
+            queued.addAll(pending.values());
+            sending.clear();
+            pending.clear();
+            latest.clear();
+        }
+        synchronized (retry) {
+            ScheduledFuture<?> job = retryJob;
+            if (job != null) {
+                job.cancel(false);
+                retryJob = null;
+            }
+            if (journal != null) {
+                Map<String, YandexCallbackBatcher.DeviceStates> waiting = new LinkedHashMap<>(retry);
+                retry.clear();
+                // states already kept count as newer, so the latest queued batch goes first
+                for (int i = queued.size() - 1; i >= 0; i--) {
+                    addRetry(queued.get(i));
+                }
+                addRetry(waiting);
+                writeJournal();
+            }
+            retry.clear();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link YandexCallbackEncoder} encodes state changes and callback/state payloads. Encoders borrow a reusable
+ * buffer from a small pool, so an encoded state costs only the bytes that are kept.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexCallbackEncoder {
+    private static final int POOL_SIZE = 8;
+    private static final int MAX_KEPT_SIZE = 65536;
+    private static final Queue<Buffer> POOL = new ConcurrentLinkedQueue<>();
+
+    private YandexCallbackEncoder() {
+    }
+
+    /**
+     * Encodes the capability state into the device states, returns false when the state does not fit the capability.
+     */
+    public static boolean putCapability(YandexCallbackBatcher.DeviceStates states, YandexAliceCapabilities capability,
+            State state) throws IOException {
+        Buffer buffer = acquire();
+        try {
+            YandexStateEncoder.writeCapabilityState(buffer.writer, capability, state);
+            buffer.writer.flush();
+            if (buffer.out.size() == 0) {
+                return false;
+            }
+            states.capabilities.put(capability.getCapabilityName() + ":"
+                    + YandexStateEncoder.capabilityInstance(capability, state), buffer.out.toByteArray());
+            return true;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Encodes the property state into the device states, returns false when the state does not fit the property.
+     */
+    public static boolean putProperty(YandexCallbackBatcher.DeviceStates states, YandexAliceProperties property,
+            State state) throws IOException {
+        Buffer buffer = acquire();
+        try {
+            YandexStateEncoder.writePropertyState(buffer.writer, property, state);
+            buffer.writer.flush();
+            if (buffer.out.size() == 0) {
+                return false;
+            }
+            states.properties.put(property.getPropName() + ":" + property.getInstance(), buffer.out.toByteArray());
+            return true;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Encodes the callback/state payload of the devices.
+     */
+    public static byte[] encodeCallback(String userId, Map<String, YandexCallbackBatcher.DeviceStates> devices)
+            throws IOException {
+        Buffer buffer = acquire();
+        try {
+            YandexJsonWriter writer = buffer.writer;
+            writer.beginObject().name("ts").value((double) System.currentTimeMillis() / 1000L).name("payload")
+                    .beginObject().name("user_id").value(userId).name("devices").beginArray();
+            for (Map.Entry<String, YandexCallbackBatcher.DeviceStates> e : devices.entrySet()) {
+                writeDevice(writer, e.getKey(), e.getValue());
+            }
+            writer.endArray().endObject().endObject().flush();
+            return buffer.out.toByteArray();
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Writes one device with its encoded states, leaving out empty capability or property lists.
+     */
+    public static void writeDevice(YandexJsonWriter writer, String id, YandexCallbackBatcher.DeviceStates states)
+            throws IOException {
+        writer.beginObject().name("id").value(id);
+        if (!states.capabilities.isEmpty()) {
+            writer.name("capabilities").beginArray();
+            for (byte[] state : states.capabilities.values()) {
+                writer.raw(state);
+            }
+            writer.endArray();
+        }
+        if (!states.properties.isEmpty()) {
+            writer.name("properties").beginArray();
+            for (byte[] state : states.properties.values()) {
+                writer.raw(state);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Takes a buffer of the pool, or a new one if all are in use, with the writer ready for a new document.
+     */
+    private static Buffer acquire() {
+        Buffer buffer = POOL.poll();
+        if (buffer == null) {
+            return new Buffer();
+        }
+        buffer.out.reset();
+        buffer.writer.reset();
+        return buffer;
+    }
+
+    private static void release(Buffer buffer) {
+        // large callbacks are rare, their buffers are not worth keeping
+        if (buffer.out.size() <= MAX_KEPT_SIZE && POOL.size() < POOL_SIZE) {
+            POOL.offer(buffer);
+        }
+    }
+
+    private static class Buffer {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        final YandexJsonWriter writer = new YandexJsonWriter(out, YandexJsonWriter.FRAGMENT_SIZE);
+    }
+}
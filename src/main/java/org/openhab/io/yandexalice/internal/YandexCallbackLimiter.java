@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link YandexCallbackLimiter} limits the rate of state updates per device with a token bucket. An update that
+ * finds the bucket empty is held back until the next token is available; later updates of the same capability or
+ * property replace it, so only the latest state of every instance is sent.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexCallbackLimiter {
+    public static final double DEFAULT_RATE = 1;
+    public static final int DEFAULT_BURST = 3;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Function<String, @Nullable Double> rateOverride;
+    private final BiConsumer<String, YandexCallbackBatcher.DeviceStates> sink;
+    private volatile double rate = DEFAULT_RATE;
+    private volatile int burst = DEFAULT_BURST;
+
+    /**
+     * @param rateOverride returns the rate of a device if it differs from the configured one
+     */
+    public YandexCallbackLimiter(ScheduledExecutorService scheduler, Function<String, @Nullable Double> rateOverride,
+            BiConsumer<String, YandexCallbackBatcher.DeviceStates> sink) {
+        this.scheduler = scheduler;
+        this.rateOverride = rateOverride;
+        this.sink = sink;
+    }
+
+    /**
+     * Sets the number of updates per second and device, 0 disables the limit, and the number of updates that may be
+     * sent at once. Changed limits release the states held back, new buckets use the new limits.
+     */
+    public void setLimits(double rate, int burst) {
+        double newRate = Math.max(0, rate);
+        int newBurst = Math.max(1, burst);
+        if (newRate != this.rate || newBurst != this.burst) {
+            this.rate = newRate;
+            this.burst = newBurst;
+            releaseAll();
+        }
+    }
+
+    public void add(String id, YandexCallbackBatcher.DeviceStates states) {
+        add(id, states, false);
+    }
+
+    /**
+     * Drops the bucket of a device, so the next update reads its rate again. States held back are added to a new
+     * bucket.
+     */
+    public void reset(String id) {
+        Bucket bucket = buckets.get(id);
+        if (bucket != null) {
+            synchronized (bucket) {
+                if (buckets.get(id) == bucket) {
+                    drop(id, bucket);
+                    if (!bucket.states.isEmpty()) {
+                        add(id, bucket.states, true);
+                        bucket.states.clear();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the limiter and passes the states held back by the buckets on at once.
+     */
+    public void stop() {
+        releaseAll();
+    }
+
+    /**
+     * Adds the states to the bucket of the device. Older states, moved from a dropped bucket, do not overwrite the
+     * ones the new bucket already holds.
+     */
+    private void add(String id, YandexCallbackBatcher.DeviceStates states, boolean older) {
+        while (true) {
+            Bucket bucket = buckets.computeIfAbsent(id, this::createBucket);
+            synchronized (bucket) {
+                // reset, setLimits or stop may have dropped the bucket in the meantime
+                if (buckets.get(id) != bucket) {
+                    continue;
+                }
+                if (older) {
+                    YandexCallbackBatcher.DeviceStates newer = new YandexCallbackBatcher.DeviceStates();
+                    newer.putAll(bucket.states);
+                    bucket.states.clear();
+                    bucket.states.putAll(states);
+                    bucket.states.putAll(newer);
+                } else {
+                    bucket.states.putAll(states);
+                }
+                if (bucket.job == null) {
+                    take(id, bucket);
+                }
+                return;
+            }
+        }
+    }
+
+    private void releaseAll() {
+        buckets.forEach((id, bucket) -> {
+            synchronized (bucket) {
+                if (buckets.get(id) == bucket) {
+                    drop(id, bucket);
+                    release(id, bucket);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the bucket of the device and cancels its job, the caller holds the lock of the bucket.
+     */
+    private void drop(String id, Bucket bucket) {
+        ScheduledFuture<?> job = bucket.job;
+        if (job != null) {
+            job.cancel(false);
+            bucket.job = null;
+        }
+        buckets.remove(id, bucket);
+    }
+
+    private Bucket createBucket(String id) {
+        Double override = rateOverride.apply(id);
+        return new Bucket(override != null ? Math.max(0, override) : rate, burst);
+    }
+
+    /**
+     * Releases the states if a token is available, or schedules the release, the caller holds the lock.
+     */
+    private void take(String id, Bucket bucket) {
+        long wait = bucket.take(System.nanoTime());
+        if (wait <= 0) {
+            release(id, bucket);
+        } else {
+            bucket.job = scheduler.schedule(() -> scheduled(id, bucket), wait, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void scheduled(String id, Bucket bucket) {
+        synchronized (bucket) {
+            // a cancelled job may already be waiting for the lock
+            if (bucket.job != null && buckets.get(id) == bucket) {
+                bucket.job = null;
+                take(id, bucket);
+            }
+        }
+    }
+
+    private void release(String id, Bucket bucket) {
+        YandexCallbackBatcher.DeviceStates states = bucket.states;
+        if (!states.isEmpty()) {
+            sink.accept(id, states);
+            states.clear();
+        }
+    }
+
+    private static class Bucket {
+        final YandexCallbackBatcher.DeviceStates states = new YandexCallbackBatcher.DeviceStates();
+        final double rate;
+        final int burst;
+        double tokens;
+        long refilled;
+        @Nullable
+        ScheduledFuture<?> job;
+
+        Bucket(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilled = System.nanoTime();
+        }
+
+        /**
+         * Takes a token and returns 0, or returns the nanoseconds until the next token is available.
+         */
+        long take(long now) {
+            if (rate == 0) {
+                return 0;
+            }
+            tokens = Math.min(burst, tokens + (now - refilled) * rate / TimeUnit.SECONDS.toNanos(1));
+            refilled = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+    }
+}
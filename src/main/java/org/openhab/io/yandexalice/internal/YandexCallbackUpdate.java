@@ -12,15 +12,17 @@
  */
 package org.openhab.io.yandexalice.internal;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,49 +33,51 @@ import org.slf4j.LoggerFactory;
  *
  */
 @NonNullByDefault
-public class YandexCallbackUpdate implements Runnable {
+public class YandexCallbackUpdate {
+    private static final String CALLBACK_URL = "https://dialogs.yandex.net/api/v1/skills/%s/callback/state";
+    private static final int REQUEST_TIMEOUT = 5;
     private final YandexAliceCredits credit = new YandexAliceCredits();
     private final Logger logger = LoggerFactory.getLogger(YandexCallbackUpdate.class);
-    String json;
+    private final HttpClient httpClient;
+    private final YandexMetrics metrics;
 
-    public YandexCallbackUpdate(String json) {
-        this.json = json;
+    public YandexCallbackUpdate(HttpClient httpClient, YandexMetrics metrics) {
+        this.httpClient = httpClient;
+        this.metrics = metrics;
     }
 
-    @Override
-    public void run() {
-        logger.debug("UpdateCallback running, json is {}", json);
-        HttpURLConnection con;
-        URL yandexURL;
+    /**
+     * Sends the state asynchronously. onComplete receives the HTTP status code, or 0 when the request failed.
+     */
+    public void send(byte[] json, IntConsumer onComplete) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("UpdateCallback running, json is {}", new String(json, StandardCharsets.UTF_8));
+        }
+        long start = System.nanoTime();
         try {
-            yandexURL = new URL("https://dialogs.yandex.net/api/v1/skills/" + credit.getSkillID() + "/callback/state");
-            con = (HttpURLConnection) yandexURL.openConnection();
-            con.setConnectTimeout(1000);
-            con.setReadTimeout(2000);
-            con.setRequestMethod("POST");
-            con.setRequestProperty("Authorization", "OAuth " + credit.getoAuth());
-            con.setRequestProperty("Content-Type", "application/json");
-            con.setDoOutput(true);
-            try (OutputStream os = con.getOutputStream()) {
-                byte[] input = json.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
-
-            int code = con.getResponseCode();
-            // Map<String, List<String>> headers = con.getHeaderFields();
-            logger.debug("Response: {}, code {}", con.getResponseMessage(), code);
-            // InputStream resp = con.getInputStream();
-            BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-            String inputLine;
-            StringBuilder response = new StringBuilder();
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
-            }
-            in.close();
-            String result = response.toString().trim();
-            logger.debug("input string from REST: {}", result);
-        } catch (IOException e) {
+            httpClient.newRequest(String.format(CALLBACK_URL, credit.getSkillID())).method(HttpMethod.POST)
+                    .timeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                    .header(HttpHeader.AUTHORIZATION, "OAuth " + credit.getoAuth())
+                    .content(new BytesContentProvider("application/json", json))
+                    .send(new BufferingResponseListener() {
+                        @Override
+                        public void onComplete(Result result) {
+                            if (result.isFailed()) {
+                                logger.debug("ERROR {}", result.getFailure().getMessage());
+                                metrics.recordCallback(0, start);
+                                onComplete.accept(0);
+                            } else {
+                                int code = result.getResponse().getStatus();
+                                logger.debug("Response: {}, code {}", getContentAsString(), code);
+                                metrics.recordCallback(code, start);
+                                onComplete.accept(code);
+                            }
+                        }
+                    });
+        } catch (RuntimeException e) {
             logger.debug("ERROR {}", e.getMessage());
+            metrics.recordCallback(0, start);
+            onComplete.accept(0);
         }
     }
 }
@@ -12,6 +12,7 @@
  */
 package org.openhab.io.yandexalice.internal;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -191,16 +192,27 @@ public class YandexDevice {
     private final String type;
     private final List<YandexAliceProperties> properties = new ArrayList<>();
     private final List<YandexAliceCapabilities> capabilities;
-    private State state;
+    private final State state;
+    private volatile int index = -1;
     private Collection<String> scenesList = new ArrayList<>();;
     private String scenesOhID;
 
+    /**
+     * Returns the state of the item when the device was built.
+     */
     public State getState() {
         return state;
     }
 
-    public void setState(State state) {
-        this.state = state;
+    /**
+     * Returns the dense id of the device in the value cache, or -1 if it is not indexed.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
     }
 
     public YandexDevice(String id, String name, String type, State state) {
@@ -322,6 +334,22 @@ public class YandexDevice {
         return properties;
     }
 
+    /**
+     * Writes the device description of the devices discovery response.
+     */
+    public void writeDiscovery(YandexJsonWriter writer) throws IOException {
+        writer.beginObject().name("id").value(id).name("name").value(name).name("type").value(type)
+                .name("capabilities").beginArray();
+        for (YandexAliceCapabilities cp : capabilities) {
+            cp.writeDiscovery(writer);
+        }
+        writer.endArray().name("properties").beginArray();
+        for (YandexAliceProperties prp : properties) {
+            prp.writeDiscovery(writer);
+        }
+        writer.endArray().endObject();
+    }
+
     public void setSceneColorCapabilities(Collection<String> scenesList, String scenesOhID) {
         this.scenesList = scenesList;
         this.scenesOhID = scenesOhID;
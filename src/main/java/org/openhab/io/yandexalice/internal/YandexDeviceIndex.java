@@ -0,0 +1,379 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.registry.RegistryChangeListener;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.ItemRegistryChangeListener;
+import org.openhab.core.items.Metadata;
+import org.openhab.core.items.MetadataRegistry;
+import org.openhab.core.thing.link.ItemChannelLink;
+import org.openhab.core.thing.link.ItemChannelLinkRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link YandexDeviceIndex} keeps the Yandex devices built from tagged items. It follows the item registry and
+ * rebuilds only the changed item and the groups it belongs to; metadata and channel links of an item count as changes
+ * of the item, as the device takes its state description from them. Readers get an immutable snapshot that is replaced
+ * as a whole on every change, so lookups never lock; the version is increased with every new snapshot. Every
+ * snapshot also maps the member items of group devices to the capabilities and properties they feed. Devices entering
+ * a snapshot get a row in the value cache, which is released when they leave it. The change listener is told the id of
+ * every device that was rebuilt, added or removed.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexDeviceIndex implements ItemRegistryChangeListener {
+    private final Logger logger = LoggerFactory.getLogger(YandexDeviceIndex.class);
+    private final Object lock = new Object();
+    private final Function<Item, @Nullable YandexDevice> deviceFactory;
+    private final YandexValueCache values = new YandexValueCache();
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), 0);
+    private final RegistryChangeListener<Metadata> metadataListener = new RegistryChangeListener<>() {
+        @Override
+        public void added(Metadata element) {
+            metadataChanged(element);
+        }
+
+        @Override
+        public void removed(Metadata element) {
+            metadataChanged(element);
+        }
+
+        @Override
+        public void updated(Metadata oldElement, Metadata element) {
+            metadataChanged(element);
+        }
+    };
+    private final RegistryChangeListener<ItemChannelLink> linkListener = new RegistryChangeListener<>() {
+        @Override
+        public void added(ItemChannelLink element) {
+            reindex(element.getItemName());
+        }
+
+        @Override
+        public void removed(ItemChannelLink element) {
+            reindex(element.getItemName());
+        }
+
+        @Override
+        public void updated(ItemChannelLink oldElement, ItemChannelLink element) {
+            reindex(oldElement.getItemName());
+            if (!oldElement.getItemName().equals(element.getItemName())) {
+                reindex(element.getItemName());
+            }
+        }
+    };
+    private @Nullable ItemRegistry itemRegistry;
+    private @Nullable MetadataRegistry metadataRegistry;
+    private @Nullable ItemChannelLinkRegistry linkRegistry;
+    private Consumer<String> changeListener = id -> {
+    };
+
+    public YandexDeviceIndex(Function<Item, @Nullable YandexDevice> deviceFactory) {
+        this.deviceFactory = deviceFactory;
+    }
+
+    public void start(ItemRegistry itemRegistry, MetadataRegistry metadataRegistry,
+            ItemChannelLinkRegistry linkRegistry, Consumer<String> changeListener) {
+        this.changeListener = changeListener;
+        this.itemRegistry = itemRegistry;
+        this.metadataRegistry = metadataRegistry;
+        this.linkRegistry = linkRegistry;
+        itemRegistry.addRegistryChangeListener(this);
+        metadataRegistry.addRegistryChangeListener(metadataListener);
+        linkRegistry.addRegistryChangeListener(linkListener);
+        rebuild();
+    }
+
+    public void stop() {
+        ItemRegistry itemRegistry = this.itemRegistry;
+        if (itemRegistry != null) {
+            itemRegistry.removeRegistryChangeListener(this);
+        }
+        MetadataRegistry metadataRegistry = this.metadataRegistry;
+        if (metadataRegistry != null) {
+            metadataRegistry.removeRegistryChangeListener(metadataListener);
+        }
+        ItemChannelLinkRegistry linkRegistry = this.linkRegistry;
+        if (linkRegistry != null) {
+            linkRegistry.removeRegistryChangeListener(linkListener);
+        }
+        this.itemRegistry = null;
+        this.metadataRegistry = null;
+        this.linkRegistry = null;
+        synchronized (lock) {
+            publish(new HashMap<>());
+            changeListener = id -> {
+            };
+        }
+    }
+
+    /**
+     * Returns the last values sent to Yandex for the devices of the index.
+     */
+    public YandexValueCache getValues() {
+        return values;
+    }
+
+    public long getVersion() {
+        return snapshot.version;
+    }
+
+    public @Nullable YandexDevice get(String id) {
+        return snapshot.devices.get(id);
+    }
+
+    public List<YandexDevice> getDevices() {
+        return snapshot.list;
+    }
+
+    /**
+     * Returns true if state changes of the item have to be reported to Yandex, either as a device or as a member of a
+     * group device.
+     */
+    public boolean isRelevant(String itemName) {
+        Snapshot snapshot = this.snapshot;
+        return snapshot.devices.containsKey(itemName) || snapshot.members.containsKey(itemName);
+    }
+
+    /**
+     * Returns the group devices fed by the given member item, with the capabilities and properties it is bound to.
+     */
+    public List<Member> getMembers(String itemName) {
+        return snapshot.members.getOrDefault(itemName, List.of());
+    }
+
+    /**
+     * Rebuilds all devices, e.g. when the rules they are built with changed.
+     */
+    public void rebuild() {
+        ItemRegistry itemRegistry = this.itemRegistry;
+        if (itemRegistry != null) {
+            // devices are built under the lock, so a slower rebuild cannot overwrite a newer change
+            synchronized (lock) {
+                Map<String, YandexDevice> devices = new HashMap<>();
+                for (Item item : itemRegistry.getItems()) {
+                    YandexDevice yDev = create(item);
+                    if (yDev != null) {
+                        devices.put(item.getName(), yDev);
+                    }
+                }
+                publish(devices);
+            }
+        }
+    }
+
+    private void index(Item item) {
+        synchronized (lock) {
+            // events may be handled out of order, the registry holds the latest version of the item
+            ItemRegistry itemRegistry = this.itemRegistry;
+            Item current = itemRegistry != null ? itemRegistry.get(item.getName()) : item;
+            YandexDevice yDev = current != null ? create(current) : null;
+            Map<String, YandexDevice> devices = snapshot.devices;
+            if (yDev != null) {
+                Map<String, YandexDevice> copy = new HashMap<>(devices);
+                copy.put(item.getName(), yDev);
+                publish(copy);
+            } else if (devices.containsKey(item.getName())) {
+                remove(item.getName());
+            }
+        }
+    }
+
+    private @Nullable YandexDevice create(Item item) {
+        if (item.hasTag("Yandex")) {
+            try {
+                return deviceFactory.apply(item);
+            } catch (RuntimeException e) {
+                logger.debug("Cannot create device for item {}: {}", item.getName(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private void remove(String name) {
+        synchronized (lock) {
+            if (snapshot.devices.containsKey(name)) {
+                Map<String, YandexDevice> copy = new HashMap<>(snapshot.devices);
+                copy.remove(name);
+                publish(copy);
+            }
+        }
+    }
+
+    private void publish(Map<String, YandexDevice> devices) {
+        Snapshot old = snapshot;
+        devices.values().forEach(values::add);
+        snapshot = new Snapshot(devices, old.version + 1);
+        for (YandexDevice yDev : old.list) {
+            if (devices.get(yDev.getId()) != yDev) {
+                values.remove(yDev);
+                changeListener.accept(yDev.getId());
+            }
+        }
+        for (YandexDevice yDev : snapshot.list) {
+            if (!old.devices.containsKey(yDev.getId())) {
+                changeListener.accept(yDev.getId());
+            }
+        }
+    }
+
+    private void indexGroups(Item item, Set<String> visited) {
+        ItemRegistry itemRegistry = this.itemRegistry;
+        if (itemRegistry != null) {
+            for (String groupName : item.getGroupNames()) {
+                Item group = itemRegistry.get(groupName);
+                if (group != null && visited.add(groupName)) {
+                    index(group);
+                    indexGroups(group, visited);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void added(Item element) {
+        index(element);
+        indexGroups(element, new HashSet<>());
+    }
+
+    @Override
+    public void removed(Item element) {
+        remove(element.getName());
+        indexGroups(element, new HashSet<>());
+    }
+
+    @Override
+    public void updated(Item oldElement, Item element) {
+        index(element);
+        Set<String> visited = new HashSet<>();
+        indexGroups(oldElement, visited);
+        indexGroups(element, visited);
+    }
+
+    private void metadataChanged(Metadata metadata) {
+        reindex(metadata.getUID().getItemName());
+    }
+
+    /**
+     * Rebuilds the device of the item and the groups it belongs to, e.g. when its state description changed.
+     */
+    public void reindex(String itemName) {
+        ItemRegistry itemRegistry = this.itemRegistry;
+        if (itemRegistry != null) {
+            Item item = itemRegistry.get(itemName);
+            if (item != null) {
+                index(item);
+                indexGroups(item, new HashSet<>());
+            }
+        }
+    }
+
+    @Override
+    public void allItemsChanged(Collection<String> oldItemNames) {
+        rebuild();
+    }
+
+    /**
+     * The fields of one group device fed by a member item.
+     */
+    public static class Member {
+        private final YandexDevice device;
+        private final List<YandexAliceCapabilities> capabilities = new ArrayList<>();
+        private final List<YandexAliceProperties> properties = new ArrayList<>();
+        private final List<YandexAliceCapabilities> colorSettings = new ArrayList<>();
+
+        Member(YandexDevice device) {
+            this.device = device;
+        }
+
+        public YandexDevice getDevice() {
+            return device;
+        }
+
+        public List<YandexAliceCapabilities> getCapabilities() {
+            return capabilities;
+        }
+
+        public List<YandexAliceProperties> getProperties() {
+            return properties;
+        }
+
+        /**
+         * Color settings capabilities the member feeds the scene or color temperature of.
+         */
+        public List<YandexAliceCapabilities> getColorSettings() {
+            return colorSettings;
+        }
+    }
+
+    private static class Snapshot {
+        final Map<String, YandexDevice> devices;
+        final List<YandexDevice> list;
+        final Map<String, List<Member>> members = new HashMap<>();
+        final long version;
+
+        Snapshot(Map<String, YandexDevice> devices, long version) {
+            this.devices = Map.copyOf(devices);
+            this.list = List.copyOf(devices.values());
+            this.version = version;
+            for (YandexDevice yDev : list) {
+                Map<String, Member> bound = new HashMap<>();
+                for (YandexAliceProperties prop : yDev.getProperties()) {
+                    Member member = member(bound, yDev, prop.getOhID());
+                    if (member != null) {
+                        member.properties.add(prop);
+                    }
+                }
+                for (YandexAliceCapabilities cap : yDev.getCapabilities()) {
+                    Member member = member(bound, yDev, cap.getOhID());
+                    if (member != null) {
+                        member.capabilities.add(cap);
+                    }
+                    if (YandexDevice.CAP_COLOR_SETTINGS.equals(cap.getCapabilityName())) {
+                        for (String ohID : new String[] { cap.getScenesOhID(), cap.getTemperatureK().getOhID() }) {
+                            member = member(bound, yDev, ohID);
+                            if (member != null && !ohID.equals(cap.getOhID())) {
+                                member.colorSettings.add(cap);
+                            }
+                        }
+                    }
+                }
+                bound.forEach((name, member) -> members.computeIfAbsent(name, k -> new ArrayList<>()).add(member));
+            }
+        }
+
+        private static @Nullable Member member(Map<String, Member> bound, YandexDevice yDev,
+                @Nullable String ohID) {
+            if (ohID == null || ohID.isEmpty() || ohID.equals(yDev.getId())) {
+                return null;
+            }
+            return bound.computeIfAbsent(ohID, k -> new Member(yDev));
+        }
+    }
+}
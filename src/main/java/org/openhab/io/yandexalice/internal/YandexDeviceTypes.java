@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link YandexDeviceTypes} keeps the catalogue of Yandex device types. It starts with the list bundled with the
+ * add-on, or the one cached on disk by an earlier refresh. The optional refresher asks the Yandex documentation with
+ * conditional requests in the background and caches a changed list on disk. Only "devices.types." entries are taken,
+ * and a page or cache with less than half the bundled types is ignored. Group devices take their type from the
+ * catalogue, so the change listener is told when a refresh changed it.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexDeviceTypes {
+    private static final String BUNDLED = "/yandexalice/device-types.txt";
+    private static final String CATALOGUE_URL = "https://yandex.ru/dev/dialogs/smart-home/doc/ru/concepts/device-types";
+    private static final String TYPE_PREFIX = "devices.types.";
+    private static final int REQUEST_TIMEOUT = 30;
+    private static final int REFRESH_INTERVAL = 60;
+    private static final int MAX_PAGE_SIZE = 8 * 1024 * 1024;
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 "
+            + "(KHTML, like Gecko) Chrome/128.0.0.0 YaBrowser/24.10.0.0 Safari/537.36";
+    private final Logger logger = LoggerFactory.getLogger(YandexDeviceTypes.class);
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final Path cache;
+    private final Runnable changeListener;
+    private volatile List<String> types;
+    private @Nullable String etag;
+    private @Nullable String lastModified;
+    private @Nullable ScheduledFuture<?> refreshJob;
+
+    public YandexDeviceTypes(HttpClient httpClient, ScheduledExecutorService scheduler, Path cache,
+            Runnable changeListener) {
+        this.httpClient = httpClient;
+        this.scheduler = scheduler;
+        this.cache = cache;
+        this.changeListener = changeListener;
+        this.types = readBundled();
+        readCache();
+    }
+
+    public List<String> getTypes() {
+        return types;
+    }
+
+    /**
+     * Starts or stops refreshing the catalogue every hour.
+     */
+    public synchronized void setRefresh(boolean enabled) {
+        ScheduledFuture<?> job = refreshJob;
+        if (enabled && job == null) {
+            refreshJob = scheduler.scheduleWithFixedDelay(this::refresh, 0, REFRESH_INTERVAL, TimeUnit.MINUTES);
+        } else if (!enabled && job != null) {
+            job.cancel(false);
+            refreshJob = null;
+        }
+    }
+
+    public void stop() {
+        setRefresh(false);
+    }
+
+    private void refresh() {
+        Request request = httpClient.newRequest(CATALOGUE_URL).timeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                .agent(USER_AGENT).header(HttpHeader.COOKIE, "yandexuid=8427797031695969902");
+        synchronized (this) {
+            String etag = this.etag;
+            if (etag != null) {
+                request.header(HttpHeader.IF_NONE_MATCH, etag);
+            }
+            String lastModified = this.lastModified;
+            if (lastModified != null) {
+                request.header(HttpHeader.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+        request.send(new BufferingResponseListener(MAX_PAGE_SIZE) {
+            @Override
+            public void onComplete(Result result) {
+                if (result.isFailed()) {
+                    logger.debug("Cannot refresh device types: {}", result.getFailure().getMessage());
+                } else if (result.getResponse().getStatus() == HttpStatus.NOT_MODIFIED_304) {
+                    logger.debug("Device types not modified");
+                } else if (result.getResponse().getStatus() == HttpStatus.OK_200) {
+                    Set<String> parsed = new LinkedHashSet<>();
+                    for (Element dev : Jsoup.parse(getContentAsString()).getElementsByAttribute("yfm_patched")) {
+                        String type = dev.attr("alt").trim();
+                        if (type.startsWith(TYPE_PREFIX) && type.length() > TYPE_PREFIX.length()) {
+                            parsed.add(type);
+                        }
+                    }
+                    // a changed page layout must not replace the catalogue with a few stray values
+                    if (parsed.size() < types.size() / 2) {
+                        logger.debug("Device types page yields {} types only, keeping the current list",
+                                parsed.size());
+                    } else {
+                        updated(new ArrayList<>(parsed), result.getResponse().getHeaders().get(HttpHeader.ETAG),
+                                result.getResponse().getHeaders().get(HttpHeader.LAST_MODIFIED));
+                    }
+                } else {
+                    logger.debug("Cannot refresh device types, code {}", result.getResponse().getStatus());
+                }
+            }
+        });
+    }
+
+    private synchronized void updated(List<String> types, @Nullable String etag, @Nullable String lastModified) {
+        boolean changed = !types.equals(this.types);
+        this.types = List.copyOf(types);
+        this.etag = etag;
+        this.lastModified = lastModified;
+        logger.debug("Device types refreshed, {} types", types.size());
+        JSONObject saved = new JSONObject().put("types", new JSONArray(types));
+        if (etag != null) {
+            saved.put("etag", etag);
+        }
+        if (lastModified != null) {
+            saved.put("lastModified", lastModified);
+        }
+        try {
+            Files.createDirectories(cache.getParent());
+            Files.writeString(cache, saved.toString(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.debug("Cannot write device types cache {}: {}", cache, e.getMessage());
+        }
+        if (changed) {
+            changeListener.run();
+        }
+    }
+
+    private List<String> readBundled() {
+        List<String> bundled = new ArrayList<>();
+        InputStream in = YandexDeviceTypes.class.getResourceAsStream(BUNDLED);
+        if (in != null) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        bundled.add(line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Cannot read bundled device types: {}", e.getMessage());
+            }
+        }
+        return bundled.isEmpty() ? List.copyOf(YandexAliceDevicesConstants.DEV_LIST) : List.copyOf(bundled);
+    }
+
+    private void readCache() {
+        if (Files.isRegularFile(cache)) {
+            try {
+                JSONObject saved = new JSONObject(Files.readString(cache, StandardCharsets.UTF_8));
+                List<String> cached = new ArrayList<>();
+                saved.getJSONArray("types").forEach(type -> {
+                    if (type.toString().startsWith(TYPE_PREFIX)) {
+                        cached.add(type.toString());
+                    }
+                });
+                if (cached.size() >= types.size() / 2) {
+                    types = List.copyOf(cached);
+                    etag = saved.optString("etag", null);
+                    lastModified = saved.optString("lastModified", null);
+                }
+            } catch (IOException | JSONException e) {
+                logger.debug("Cannot read device types cache {}: {}", cache, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link YandexDiscoveryCache} keeps the encoded payload of the devices discovery response. The payload is
+ * rebuilt only when the version of the device index changes; the request id is written around it on every request.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexDiscoveryCache {
+    private final Logger logger = LoggerFactory.getLogger(YandexDiscoveryCache.class);
+    private final YandexDeviceIndex deviceIndex;
+    private volatile @Nullable Entry cached;
+
+    public YandexDiscoveryCache(YandexDeviceIndex deviceIndex) {
+        this.deviceIndex = deviceIndex;
+    }
+
+    public void write(String requestId, String userId, OutputStream out) throws IOException {
+        // the payload is written straight through, the writer only buffers the envelope
+        new YandexJsonWriter(out, YandexJsonWriter.FRAGMENT_SIZE).beginObject().name("request_id").value(requestId)
+                .name("payload").raw(getPayload(userId)).endObject().flush();
+    }
+
+    private byte[] getPayload(String userId) throws IOException {
+        long version = deviceIndex.getVersion();
+        Entry entry = cached;
+        if (entry == null || entry.version != version) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            YandexJsonWriter writer = new YandexJsonWriter(payload);
+            writer.beginObject().name("user_id").value(userId).name("devices").beginArray();
+            for (YandexDevice yDev : deviceIndex.getDevices()) {
+                yDev.writeDiscovery(writer);
+            }
+            writer.endArray().endObject().flush();
+            entry = new Entry(version, payload.toByteArray());
+            cached = entry;
+            logger.debug("Items list response rebuilt, {} bytes", entry.payload.length);
+        }
+        return entry.payload;
+    }
+
+    private static class Entry {
+        final long version;
+        final byte[] payload;
+
+        Entry(long version, byte[] payload) {
+            this.version = version;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link YandexEchoSuppressor} remembers the commands sent on behalf of Yandex. A state update of the same item
+ * with the expected state is an echo of such a command and does not have to be reported back to Yandex. Entries
+ * expire after a short time, so later updates of the item are reported again.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexEchoSuppressor {
+    public static final long DEFAULT_TTL = 3000;
+    private static final int PURGE_SIZE = 256;
+    private final Map<String, Expected> expected = new ConcurrentHashMap<>();
+    private final long ttl;
+
+    public YandexEchoSuppressor(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public void expect(String itemName, Command command) {
+        long now = System.currentTimeMillis();
+        if (expected.size() >= PURGE_SIZE) {
+            expected.values().removeIf(e -> e.expires <= now);
+        }
+        expected.put(itemName, new Expected(command, now + ttl));
+    }
+
+    /**
+     * Returns true if the state is the expected result of a recent command to the item. A match consumes the
+     * expectation, so only the first such update is treated as an echo.
+     */
+    public boolean isEcho(String itemName, State state) {
+        Expected e = expected.get(itemName);
+        if (e == null) {
+            return false;
+        }
+        if (e.expires <= System.currentTimeMillis()) {
+            expected.remove(itemName, e);
+            return false;
+        }
+        if (matches(e.command, state)) {
+            expected.remove(itemName, e);
+            return true;
+        }
+        return false;
+    }
+
+    public void clear() {
+        expected.clear();
+    }
+
+    private static boolean matches(Command command, State state) {
+        if (command.equals(state)) {
+            return true;
+        }
+        if (!(command instanceof State)) {
+            return false;
+        }
+        State converted = state.as(((State) command).getClass());
+        if ((converted instanceof DecimalType) && (command instanceof DecimalType)) {
+            return ((DecimalType) converted).toBigDecimal().compareTo(((DecimalType) command).toBigDecimal()) == 0;
+        }
+        return command.equals(converted);
+    }
+
+    private static class Expected {
+        final Command command;
+        final long expires;
+
+        Expected(Command command, long expires) {
+            this.command = command;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link YandexJsonWriter} writes JSON as UTF-8 straight to an output stream, without building a tree or
+ * intermediate strings. Commas between values are inserted automatically.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexJsonWriter {
+    /**
+     * Buffer size for single device, capability or property fragments, which are a few hundred bytes at most.
+     */
+    public static final int FRAGMENT_SIZE = 256;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_DEPTH = 64;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int pos;
+    private int depth;
+    private long needComma;
+    private boolean afterName;
+
+    public YandexJsonWriter(OutputStream out) {
+        this(out, BUFFER_SIZE);
+    }
+
+    public YandexJsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public YandexJsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public YandexJsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public YandexJsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public YandexJsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public YandexJsonWriter name(String name) throws IOException {
+        separator();
+        string(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public YandexJsonWriter value(String value) throws IOException {
+        separator();
+        string(value);
+        return this;
+    }
+
+    public YandexJsonWriter value(boolean value) throws IOException {
+        separator();
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    public YandexJsonWriter value(long value) throws IOException {
+        separator();
+        ascii(Long.toString(value));
+        return this;
+    }
+
+    public YandexJsonWriter value(double value) throws IOException {
+        separator();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            ascii("null");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            ascii(Long.toString((long) value));
+        } else {
+            ascii(Double.toString(value));
+        }
+        return this;
+    }
+
+    /**
+     * Writes an already encoded JSON value.
+     */
+    public YandexJsonWriter raw(byte[] json) throws IOException {
+        separator();
+        write(json, 0, json.length);
+        return this;
+    }
+
+    /**
+     * Drops buffered output and nesting state, so the writer can start a new document.
+     */
+    public void reset() {
+        pos = 0;
+        depth = 0;
+        needComma = 0;
+        afterName = false;
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, pos);
+        pos = 0;
+        out.flush();
+    }
+
+    private YandexJsonWriter open(char c) throws IOException {
+        separator();
+        write(c);
+        if (++depth >= MAX_DEPTH) {
+            throw new IOException("JSON nesting is too deep");
+        }
+        needComma &= ~(1L << depth);
+        return this;
+    }
+
+    private YandexJsonWriter close(char c) throws IOException {
+        depth--;
+        write(c);
+        return this;
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if (depth > 0) {
+            long bit = 1L << depth;
+            if ((needComma & bit) != 0) {
+                write(',');
+            } else {
+                needComma |= bit;
+            }
+        }
+    }
+
+    private void ascii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            write(s.charAt(i));
+        }
+    }
+
+    private void string(String s) throws IOException {
+        write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\');
+                write(c);
+            } else if (c < 0x20) {
+                switch (c) {
+                    case '\n':
+                        ascii("\\n");
+                        break;
+                    case '\r':
+                        ascii("\\r");
+                        break;
+                    case '\t':
+                        ascii("\\t");
+                        break;
+                    default:
+                        ascii("\\u00");
+                        write(HEX[c >> 4]);
+                        write(HEX[c & 0xF]);
+                }
+            } else if (c < 0x80) {
+                write(c);
+            } else if (c < 0x800) {
+                write(0xC0 | (c >> 6));
+                write(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                write(0xF0 | (cp >> 18));
+                write(0x80 | ((cp >> 12) & 0x3F));
+                write(0x80 | ((cp >> 6) & 0x3F));
+                write(0x80 | (cp & 0x3F));
+            } else {
+                write(0xE0 | (c >> 12));
+                write(0x80 | ((c >> 6) & 0x3F));
+                write(0x80 | (c & 0x3F));
+            }
+        }
+        write('"');
+    }
+
+    private void write(int b) throws IOException {
+        if (pos == buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+        buffer[pos++] = (byte) b;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException {
+        if (len > buffer.length - pos) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+            if (len > buffer.length) {
+                out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buffer, pos, len);
+        pos += len;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The {@link YandexMetrics} exports the request, callback and event figures of the connector to the openHAB meter
+ * registry. Nothing is recorded while no registry is bound.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexMetrics {
+    private static final String PREFIX = "yandexalice.";
+    private final Map<String, Meter> meters = new ConcurrentHashMap<>();
+    private volatile @Nullable MeterRegistry registry;
+
+    public synchronized void bind(MeterRegistry registry, YandexCallbackDispatcher dispatcher) {
+        unbind();
+        this.registry = registry;
+        add("queue", Gauge.builder(PREFIX + "callback.queue", dispatcher, YandexCallbackDispatcher::getQueueDepth)
+                .description("Callbacks waiting to be sent").register(registry));
+        add("inflight",
+                Gauge.builder(PREFIX + "callback.inflight", dispatcher, YandexCallbackDispatcher::getInFlight)
+                        .description("Callbacks being sent").register(registry));
+        add("retry", Gauge.builder(PREFIX + "callback.retry", dispatcher, YandexCallbackDispatcher::getRetryDepth)
+                .description("Devices waiting for a callback retry").register(registry));
+        add("dropped",
+                FunctionCounter.builder(PREFIX + "callback.dropped", dispatcher, YandexCallbackDispatcher::getDropped)
+                        .description("Callbacks dropped from a full queue").register(registry));
+        add("merged",
+                FunctionCounter.builder(PREFIX + "callback.merged", dispatcher, YandexCallbackDispatcher::getMerged)
+                        .description("Callbacks replaced by a later one").register(registry));
+        add("retried",
+                FunctionCounter.builder(PREFIX + "callback.retried", dispatcher, YandexCallbackDispatcher::getRetried)
+                        .description("Device states sent again after a failed callback").register(registry));
+    }
+
+    public synchronized void unbind() {
+        MeterRegistry registry = this.registry;
+        this.registry = null;
+        if (registry != null) {
+            meters.values().forEach(registry::remove);
+        }
+        meters.clear();
+    }
+
+    /**
+     * Records the time since start of a discovery, query or action request.
+     */
+    public void recordRequest(String type, long start) {
+        MeterRegistry registry = this.registry;
+        if (registry != null) {
+            Timer timer = (Timer) meters.computeIfAbsent("request:" + type, k -> Timer
+                    .builder(PREFIX + "request").tag("type", type).description("Yandex requests").register(registry));
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records the time since start of a callback POST with its HTTP status, 0 for a failed request.
+     */
+    public void recordCallback(int status, long start) {
+        MeterRegistry registry = this.registry;
+        if (registry != null) {
+            Timer timer = (Timer) meters.computeIfAbsent("callback:" + status,
+                    k -> Timer.builder(PREFIX + "callback").tag("status", String.valueOf(status))
+                            .description("Callback POSTs to Yandex").register(registry));
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Counts an item state event as processed, filtered or echo.
+     */
+    public void countEvent(String result) {
+        MeterRegistry registry = this.registry;
+        if (registry != null) {
+            ((Counter) meters.computeIfAbsent("event:" + result, k -> Counter.builder(PREFIX + "events")
+                    .tag("result", result).description("Item state events").register(registry))).increment();
+        }
+    }
+
+    private void add(String key, Meter meter) {
+        meters.put(key, meter);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * The {@link YandexRequestParser} reads the devices of a Yandex query or action request straight from the request
+ * stream. Every entry of the "devices" array (top level or inside "payload") is handed over as soon as it has been
+ * read; the rest of the request is skipped.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexRequestParser {
+
+    @FunctionalInterface
+    public interface DeviceHandler {
+        void handle(JSONObject device) throws IOException;
+    }
+
+    private YandexRequestParser() {
+    }
+
+    public static void forEachDevice(InputStream in, DeviceHandler handler) throws IOException, JSONException {
+        JSONTokener tokener = new JSONTokener(new InputStreamReader(in, StandardCharsets.UTF_8));
+        readObject(tokener, handler);
+    }
+
+    private static void readObject(JSONTokener x, DeviceHandler handler) throws IOException {
+        if (x.nextClean() != '{') {
+            throw x.syntaxError("A JSONObject text must begin with '{'");
+        }
+        if (x.nextClean() == '}') {
+            return;
+        }
+        x.back();
+        while (true) {
+            String key = x.nextValue().toString();
+            if (x.nextClean() != ':') {
+                throw x.syntaxError("Expected a ':' after a key");
+            }
+            char next = x.nextClean();
+            x.back();
+            if ("devices".equals(key) && next == '[') {
+                readDevices(x, handler);
+            } else if ("payload".equals(key) && next == '{') {
+                readObject(x, handler);
+            } else {
+                x.nextValue();
+            }
+            switch (x.nextClean()) {
+                case ',':
+                    break;
+                case '}':
+                    return;
+                default:
+                    throw x.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    private static void readDevices(JSONTokener x, DeviceHandler handler) throws IOException {
+        x.nextClean();
+        if (x.nextClean() == ']') {
+            return;
+        }
+        x.back();
+        while (true) {
+            Object device = x.nextValue();
+            if (!(device instanceof JSONObject)) {
+                throw x.syntaxError("Device must be an object");
+            }
+            handler.handle((JSONObject) device);
+            switch (x.nextClean()) {
+                case ',':
+                    break;
+                case ']':
+                    return;
+                default:
+                    throw x.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+}
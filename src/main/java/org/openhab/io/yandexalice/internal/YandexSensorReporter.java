@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link YandexSensorReporter} decides when numeric sensor states are reported to Yandex. A new value is reported
+ * when it differs from the last reported one by at least the deadband of the device instance, but not more often than
+ * the minimum interval; a change inside the minimum interval is sent when it ends. A value that has not been reported
+ * for the maximum interval is sent again. The last reported values are kept in the value cache of the device index.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexSensorReporter {
+    public static final String DEFAULT_DEADBAND = "temperature=0.5,humidity=2";
+    public static final int DEFAULT_MIN_INTERVAL = 10;
+    public static final int DEFAULT_MAX_INTERVAL = 3600;
+    private static final int SWEEP_INTERVAL = 60;
+    private final Logger logger = LoggerFactory.getLogger(YandexSensorReporter.class);
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final YandexDeviceIndex deviceIndex;
+    private final BiConsumer<YandexDevice, State> sink;
+    private volatile Map<String, Double> deadbands = parseDeadbands(DEFAULT_DEADBAND);
+    private volatile long minInterval = TimeUnit.SECONDS.toMillis(DEFAULT_MIN_INTERVAL);
+    private volatile long maxInterval = TimeUnit.SECONDS.toMillis(DEFAULT_MAX_INTERVAL);
+    private final ScheduledFuture<?> sweepJob;
+
+    public YandexSensorReporter(ScheduledExecutorService scheduler, YandexDeviceIndex deviceIndex,
+            BiConsumer<YandexDevice, State> sink) {
+        this.scheduler = scheduler;
+        this.deviceIndex = deviceIndex;
+        this.sink = sink;
+        sweepJob = scheduler.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets the deadbands as comma separated "instance=value" pairs; a value without instance applies to all other
+     * instances. The intervals are in seconds, 0 disables them.
+     */
+    public void setLimits(String deadband, int minInterval, int maxInterval) {
+        this.deadbands = parseDeadbands(deadband);
+        this.minInterval = TimeUnit.SECONDS.toMillis(Math.max(0, minInterval));
+        this.maxInterval = TimeUnit.SECONDS.toMillis(Math.max(0, maxInterval));
+    }
+
+    public void update(YandexDevice device, State state) {
+        Entry entry = entries.computeIfAbsent(device.getId(), id -> new Entry());
+        synchronized (entry) {
+            entry.device = device;
+            entry.latest = state;
+            if (!isDue(entry)) {
+                return;
+            }
+            long wait = entry.reportedAt + minInterval - System.currentTimeMillis();
+            if (wait > 0) {
+                if (entry.job == null) {
+                    entry.job = scheduler.schedule(() -> flush(entry), wait, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            report(entry);
+        }
+    }
+
+    public void stop() {
+        sweepJob.cancel(false);
+        entries.values().forEach(entry -> {
+            synchronized (entry) {
+                ScheduledFuture<?> job = entry.job;
+                if (job != null) {
+                    job.cancel(false);
+                    entry.job = null;
+                }
+            }
+        });
+        entries.clear();
+    }
+
+    private void flush(Entry entry) {
+        synchronized (entry) {
+            entry.job = null;
+            if (isDue(entry)) {
+                report(entry);
+            }
+        }
+    }
+
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        entries.forEach((id, entry) -> {
+            synchronized (entry) {
+                if (deviceIndex.get(id) == null) {
+                    entries.remove(id);
+                } else if (maxInterval > 0 && entry.latest != null && now - entry.reportedAt >= maxInterval) {
+                    report(entry);
+                }
+            }
+        });
+    }
+
+    private boolean isDue(Entry entry) {
+        YandexDevice device = entry.device;
+        State state = entry.latest;
+        return device != null && state instanceof Number
+                && deviceIndex.getValues().differs(device, YandexValueCache.DEVICE_SLOT, state, deadband(device));
+    }
+
+    private double deadband(YandexDevice device) {
+        Map<String, Double> deadbands = this.deadbands;
+        double fallback = deadbands.getOrDefault("", 0.0);
+        double deadband = Double.MAX_VALUE;
+        for (YandexAliceProperties prop : device.getProperties()) {
+            deadband = Math.min(deadband, deadbands.getOrDefault(prop.getInstance(), fallback));
+        }
+        for (YandexAliceCapabilities cap : device.getCapabilities()) {
+            deadband = Math.min(deadband, deadbands.getOrDefault(cap.getInstance(), fallback));
+        }
+        return deadband == Double.MAX_VALUE ? fallback : deadband;
+    }
+
+    private void report(Entry entry) {
+        YandexDevice device = entry.device;
+        State state = entry.latest;
+        if (device != null && state instanceof Number) {
+            deviceIndex.getValues().put(device, YandexValueCache.DEVICE_SLOT, state);
+            entry.reportedAt = System.currentTimeMillis();
+            logger.debug("Reporting sensor {} state {}", device.getId(), state);
+            sink.accept(device, state);
+        }
+    }
+
+    private Map<String, Double> parseDeadbands(String deadband) {
+        Map<String, Double> result = new HashMap<>();
+        for (String part : deadband.split(",")) {
+            int pos = part.indexOf('=');
+            String instance = pos < 0 ? "" : part.substring(0, pos).trim();
+            String value = part.substring(pos + 1).trim();
+            if (!value.isEmpty()) {
+                try {
+                    result.put(instance, Math.abs(Double.parseDouble(value)));
+                } catch (NumberFormatException e) {
+                    logger.warn("Wrong sensor deadband {}", part);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static class Entry {
+        @Nullable
+        YandexDevice device;
+        @Nullable
+        State latest;
+        long reportedAt;
+        @Nullable
+        ScheduledFuture<?> job;
+    }
+}
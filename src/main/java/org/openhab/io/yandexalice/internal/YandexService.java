@@ -15,37 +15,42 @@ package org.openhab.io.yandexalice.internal;
 import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_CURTAIN;
 import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_LIGHT;
 import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_LIST;
-import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_OPENABLE;
 import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_SENSOR;
-import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_SENSOR_OPEN;
 import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_SMART_METER;
 import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_SOCKET;
 import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_SWITCH;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.ServletException;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.client.HttpClient;
-import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.openhab.core.OpenHAB;
 import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.config.core.ConfigurableService;
 import org.openhab.core.events.Event;
@@ -53,10 +58,13 @@ import org.openhab.core.events.EventFilter;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.events.EventSubscriber;
 import org.openhab.core.id.InstanceUUID;
+import org.openhab.core.io.monitor.MeterRegistryProvider;
 import org.openhab.core.io.net.http.HttpClientFactory;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.MetadataRegistry;
 import org.openhab.core.items.events.ItemEventFactory;
 import org.openhab.core.items.events.ItemStateEvent;
 import org.openhab.core.library.items.ColorItem;
@@ -77,12 +85,15 @@ import org.openhab.core.thing.Channel;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingRegistry;
 import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.events.ChannelDescriptionChangedEvent;
 import org.openhab.core.thing.link.ItemChannelLink;
 import org.openhab.core.thing.link.ItemChannelLinkRegistry;
+import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
 import org.openhab.core.types.StateDescription;
 import org.openhab.core.types.StateDescriptionFragmentBuilder;
 import org.openhab.core.types.StateOption;
+import org.openhab.io.yandexalice.internal.YandexCallbackBatcher.DeviceStates;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.service.component.annotations.Activate;
@@ -90,6 +101,8 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
 import org.slf4j.Logger;
@@ -111,8 +124,33 @@ public class YandexService implements EventSubscriber {
     // private static final String CFG_TOKEN = "token";
     private static final String CFG_SKILLID = "skillID";
     private static final String CFG_OAUTH = "oauth";
+    // Pool sizes can be set with org.openhab.threadpool:<name>=<size>. The pools of ThreadPoolManager have unbounded
+    // queues and never push back, so every stage bounds its own work: ingest holds at most one limiter job and one
+    // sensor job per device, one sweep and one batch flush; network holds at most the concurrent callback requests of
+    // the dispatcher, one retry and one device types refresh; serialize holds at most SERIALIZE_LIMIT tasks.
+    private static final String POOL_INGEST = "yandexalice-ingest";
+    private static final String POOL_SERIALIZE = "yandexalice-serialize";
+    private static final String POOL_NETWORK = "yandexalice-network";
+    // device states and actions queued or running on the serialize pool, more run on the request thread
+    private static final int SERIALIZE_LIMIT = 64;
+    private static final Semaphore SERIALIZE_SLOTS = new Semaphore(SERIALIZE_LIMIT);
+    // Yandex waits about 3 seconds for an answer
+    private static final int REQUEST_TIMEOUT = 2500;
+    private static final String CFG_CALLBACK_QUEUE_SIZE = "callbackQueueSize";
+    private static final String CFG_CALLBACK_CONCURRENT_REQUESTS = "callbackConcurrentRequests";
+    private static final String CFG_CALLBACK_BATCH_WINDOW = "callbackBatchWindow";
+    private static final String CFG_CALLBACK_BATCH_SIZE = "callbackBatchSize";
+    private static final String CFG_DEVICE_TYPES_REFRESH = "deviceTypesRefresh";
+    private static final String CFG_CALLBACK_JOURNAL = "callbackJournal";
+    private static final String CFG_CALLBACK_RATE = "callbackRate";
+    private static final String CFG_CALLBACK_BURST = "callbackBurst";
+    private static final String RATE_TAG = "YandexRate=";
+    private static final String CFG_SENSOR_DEADBAND = "sensorDeadband";
+    private static final String CFG_SENSOR_MIN_INTERVAL = "sensorMinInterval";
+    private static final String CFG_SENSOR_MAX_INTERVAL = "sensorMaxInterval";
     private static @Nullable ThingRegistry things;
     private static @Nullable ItemChannelLinkRegistry link;
+    private static @Nullable YandexDeviceTypes deviceTypes;
     private final Logger logger = LoggerFactory.getLogger(YandexService.class);
     private final HttpClient httpClient;
     protected static @Nullable ItemRegistry itemRegistry;
@@ -120,93 +158,68 @@ public class YandexService implements EventSubscriber {
     private final @NonNullByDefault({}) YandexAliceCallbackServlet yandexHTTPCallback;
     private final HttpService httpService;
     // private final HashMap<String, String> yandexId = new HashMap<>();
-    private static boolean action;
+    private final EventFilter eventFilter = this::isRelevant;
+    private static final YandexMetrics metrics = new YandexMetrics();
+    private static final YandexEchoSuppressor echoSuppressor = new YandexEchoSuppressor(
+            YandexEchoSuppressor.DEFAULT_TTL);
     // private String yandexToken = "";
     private final YandexAliceCredits credit = new YandexAliceCredits();
     private static String uuid = "";
-    private static final HashMap<String, YandexDevice> yandexDevicesList = new HashMap<>();
-    private @Nullable ScheduledFuture<?> refreshPollingJob;
-    public static List<String> devicesList = new ArrayList<>();
-    private int devRefreshTime = 0;
-    protected final ScheduledExecutorService scheduler = ThreadPoolManager
-            .getScheduledPool(ThreadPoolManager.THREAD_POOL_NAME_COMMON);
+    private static final List<String> DEVICE_TYPES = List.copyOf(DEV_LIST);
+    private static final YandexDeviceIndex deviceIndex = new YandexDeviceIndex(YandexService::createDevice);
+    private static final YandexDiscoveryCache discoveryCache = new YandexDiscoveryCache(deviceIndex);
+    private final YandexCallbackDispatcher callbackDispatcher;
+    private final YandexCallbackBatcher callbackBatcher;
+    private final YandexCallbackLimiter callbackLimiter;
+    private final YandexSensorReporter sensorReporter;
+    protected final ScheduledExecutorService scheduler = ThreadPoolManager.getScheduledPool(POOL_INGEST);
+    private final ScheduledExecutorService networkScheduler = ThreadPoolManager.getScheduledPool(POOL_NETWORK);
 
     @Activate
     public YandexService(final @Reference HttpClientFactory httpClientFactory,
             final @Reference ItemRegistry itemRegistry, final @Reference EventPublisher eventPublisher,
             final @Reference HttpService httpService, final @Reference ThingRegistry things,
-            final @Reference ItemChannelLinkRegistry link) {
+            final @Reference ItemChannelLinkRegistry link, final @Reference MetadataRegistry metadataRegistry) {
         this.httpClient = httpClientFactory.createHttpClient("yandexalice");
         this.httpService = httpService;
         this.httpClient.setStopTimeout(0);
         this.httpClient.setMaxConnectionsPerDestination(200);
         this.httpClient.setConnectTimeout(30000);
         this.httpClient.setFollowRedirects(false);
+        try {
+            this.httpClient.start();
+        } catch (Exception e) {
+            logger.warn("Cannot start HTTP client: {}", e.getMessage());
+        }
 
         yandexHTTPCallback = new YandexAliceCallbackServlet();
         YandexService.itemRegistry = itemRegistry;
         YandexService.eventPublisher = eventPublisher;
         YandexService.things = things;
         YandexService.link = link;
-        getItemsList();
-        getDevicesList();
+        YandexService.deviceTypes = new YandexDeviceTypes(httpClient, networkScheduler,
+                Path.of(OpenHAB.getUserDataFolder(), "yandexalice", "device-types.json"), deviceIndex::rebuild);
         uuid = InstanceUUID.get();
-
-        ScheduledFuture<?> refreshPollingJob = this.refreshPollingJob;
-        if (refreshPollingJob == null || refreshPollingJob.isCancelled()) {
-            this.refreshPollingJob = scheduler.scheduleWithFixedDelay(this::refresh, 5, 60, TimeUnit.SECONDS);
-        }
+        callbackDispatcher = new YandexCallbackDispatcher(new YandexCallbackUpdate(httpClient, metrics),
+                networkScheduler, uuid, YandexCallbackDispatcher.DEFAULT_QUEUE_SIZE,
+                YandexCallbackDispatcher.DEFAULT_CONCURRENT_REQUESTS);
+        callbackBatcher = new YandexCallbackBatcher(scheduler, callbackDispatcher::submit);
+        callbackLimiter = new YandexCallbackLimiter(scheduler, YandexService::getRateTag, callbackBatcher::add);
+        // a rebuilt device may carry another rate tag
+        deviceIndex.start(itemRegistry, metadataRegistry, link, callbackLimiter::reset);
+        sensorReporter = new YandexSensorReporter(scheduler, deviceIndex, this::reportSensorState);
     }
 
-    private static void getDevicesList() {
+    private void reportSensorState(YandexDevice yaDev, State state) {
+        DeviceStates states = new DeviceStates();
         try {
-            Document doc = Jsoup.connect("https://yandex.ru/dev/dialogs/smart-home/doc/ru/concepts/device-types")
-                    .userAgent(
-                            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/128.0.0.0 YaBrowser/24.10.0.0 Safari/537.36")
-                    .header("Cookie", "yandexuid=8427797031695969902").get();
-            Elements attrs = doc.getElementsByAttribute("yfm_patched");
-            for (Element dev : attrs) {
-                if (!devicesList.contains(dev.attr("alt"))) {
-                    devicesList.add(dev.attr("alt"));
-                }
-            }
-            Logger logger = LoggerFactory.getLogger(YandexService.class);
-            logger.debug("Jsoup: done");
-        } catch (IOException ignored) {
-        }
-    }
-
-    private void refresh() {
-        logger.debug("refreshing...");
-        if (devRefreshTime == 60) {
-            getDevicesList();
-            devRefreshTime = 0;
-        } else {
-            devRefreshTime++;
-        }
-        YandexAliceJson eventJson = new YandexAliceJson((double) System.currentTimeMillis() / 1000L, uuid);
-        if (itemRegistry != null) {
-            Collection<Item> itemsList = Objects.requireNonNull(itemRegistry).getItems();
-            for (Item item : itemsList) {
-                if (!(item.getState() instanceof PercentType)) {
-                    if ((item.getState() instanceof DecimalType) || (item.getState() instanceof QuantityType)) {
-                        YandexDevice yaDev = yandexDevicesList.get(item.getName());
-                        if (yaDev != null) {
-                            eventJson.setDeviceID(yaDev);
-                            yaDev.getProperties().forEach(
-                                    (property) -> eventJson.addPropertyState(yaDev, property, item.getState()));
-                            yaDev.getCapabilities()
-                                    .forEach((cap) -> eventJson.addCapabilityState(yaDev, cap, item.getState()));
-                            updateCallback(eventJson.returnRequest.toString());
-                        }
-                    }
-                }
+            for (YandexAliceProperties property : yaDev.getProperties()) {
+                YandexCallbackEncoder.putProperty(states, property, state);
             }
+        } catch (IOException e) {
+            logger.debug("Cannot encode state of {}: {}", yaDev.getId(), e.getMessage());
         }
-    }
-
-    private void getItemsList() {
-        getItemsList("");
+        updateCallback(yaDev.getId(), states);
     }
 
     @Activate
@@ -215,12 +228,7 @@ public class YandexService implements EventSubscriber {
         // if (config.get(CFG_TOKEN) != null) {
         // // yandexToken = config.get(CFG_TOKEN).toString();
         // }
-        if (config.get(CFG_SKILLID) != null) {
-            credit.setSkillID((String) config.get(CFG_SKILLID));
-        }
-        if (config.get(CFG_OAUTH) != null) {
-            credit.setoAuth((String) config.get(CFG_OAUTH));
-        }
+        applyConfig(config);
         try {
             this.httpService.registerServlet("/yandex", yandexHTTPCallback, null,
                     this.httpService.createDefaultHttpContext());
@@ -235,22 +243,101 @@ public class YandexService implements EventSubscriber {
         // if (config.get(CFG_TOKEN) != null) {
         // // yandexToken = config.get(CFG_TOKEN).toString();
         // }
+        applyConfig(config);
+    }
+
+    private void applyConfig(Map<String, ?> config) {
         if (config.get(CFG_SKILLID) != null) {
             credit.setSkillID((String) config.get(CFG_SKILLID));
         }
         if (config.get(CFG_OAUTH) != null) {
             credit.setoAuth((String) config.get(CFG_OAUTH));
         }
+        callbackDispatcher.setLimits(
+                getIntConfig(config, CFG_CALLBACK_QUEUE_SIZE, YandexCallbackDispatcher.DEFAULT_QUEUE_SIZE),
+                getIntConfig(config, CFG_CALLBACK_CONCURRENT_REQUESTS,
+                        YandexCallbackDispatcher.DEFAULT_CONCURRENT_REQUESTS));
+        Object typesRefresh = config.get(CFG_DEVICE_TYPES_REFRESH);
+        Objects.requireNonNull(deviceTypes)
+                .setRefresh(typesRefresh == null || Boolean.parseBoolean(typesRefresh.toString()));
+        Object journal = config.get(CFG_CALLBACK_JOURNAL);
+        callbackDispatcher.setJournal(journal != null && Boolean.parseBoolean(journal.toString())
+                ? Path.of(OpenHAB.getUserDataFolder(), "yandexalice", "callbacks.json")
+                : null);
+        callbackBatcher.setLimits(
+                getIntConfig(config, CFG_CALLBACK_BATCH_WINDOW, YandexCallbackBatcher.DEFAULT_WINDOW),
+                getIntConfig(config, CFG_CALLBACK_BATCH_SIZE, YandexCallbackBatcher.DEFAULT_MAX_DEVICES));
+        callbackLimiter.setLimits(getDecimalConfig(config, CFG_CALLBACK_RATE, YandexCallbackLimiter.DEFAULT_RATE),
+                getIntConfig(config, CFG_CALLBACK_BURST, YandexCallbackLimiter.DEFAULT_BURST));
+        Object deadband = config.get(CFG_SENSOR_DEADBAND);
+        sensorReporter.setLimits(deadband != null ? deadband.toString() : YandexSensorReporter.DEFAULT_DEADBAND,
+                getIntConfig(config, CFG_SENSOR_MIN_INTERVAL, YandexSensorReporter.DEFAULT_MIN_INTERVAL),
+                getIntConfig(config, CFG_SENSOR_MAX_INTERVAL, YandexSensorReporter.DEFAULT_MAX_INTERVAL));
+    }
+
+    private int getIntConfig(Map<String, ?> config, String key, int defaultValue) {
+        return (int) getDecimalConfig(config, key, defaultValue);
+    }
+
+    private double getDecimalConfig(Map<String, ?> config, String key, double defaultValue) {
+        Object value = config.get(key);
+        if (value != null) {
+            try {
+                return new BigDecimal(value.toString()).doubleValue();
+            } catch (NumberFormatException e) {
+                logger.warn("Wrong value {} of {} parameter", value, key);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns the catalogue of Yandex device types, the built-in list until the catalogue is loaded.
+     */
+    private static List<String> getDeviceTypes() {
+        YandexDeviceTypes deviceTypes = YandexService.deviceTypes;
+        return deviceTypes != null ? deviceTypes.getTypes() : DEVICE_TYPES;
+    }
+
+    /**
+     * Returns the callback rate set by a "YandexRate=n" tag of the device item, n updates per second.
+     */
+    private static @Nullable Double getRateTag(String id) {
+        ItemRegistry itemRegistry = YandexService.itemRegistry;
+        Item item = itemRegistry != null ? itemRegistry.get(id) : null;
+        if (item != null) {
+            for (String tag : item.getTags()) {
+                if (tag.startsWith(RATE_TAG)) {
+                    try {
+                        return Double.valueOf(tag.substring(RATE_TAG.length()));
+                    } catch (NumberFormatException e) {
+                        LoggerFactory.getLogger(YandexService.class).debug("Wrong rate tag {} of {}", tag, id);
+                    }
+                }
+            }
+        }
+        return null;
     }
 
     @Override
     public Set<String> getSubscribedEventTypes() {
-        return Set.of(ItemStateEvent.TYPE);
+        return Set.of(ItemStateEvent.TYPE, ChannelDescriptionChangedEvent.TYPE);
     }
 
     @Override
     public @Nullable EventFilter getEventFilter() {
-        return null;
+        return eventFilter;
+    }
+
+    private boolean isRelevant(Event event) {
+        if ((event instanceof ItemStateEvent) && deviceIndex.isRelevant(((ItemStateEvent) event).getItemName())) {
+            return true;
+        }
+        if (event instanceof ChannelDescriptionChangedEvent) {
+            return true;
+        }
+        metrics.countEvent("filtered");
+        return false;
     }
 
     @Override
@@ -258,973 +345,795 @@ public class YandexService implements EventSubscriber {
         // TODO Action
         // logger.debug("event {}, {}, {}, {}, {}", event.getPayload(), event.getSource(), event.getType(),
         // event.getTopic(), event);
+        if (event instanceof ChannelDescriptionChangedEvent) {
+            // ranges and options of the devices come from the state description
+            ((ChannelDescriptionChangedEvent) event).getLinkedItemNames().forEach(deviceIndex::reindex);
+            return;
+        }
         try {
-            if (!action) {
-                ItemStateEvent ise = (ItemStateEvent) event;
-                String name = ise.getItemName();
-                State state = ise.getItemState();
+            ItemStateEvent ise = (ItemStateEvent) event;
+            String name = ise.getItemName();
+            State state = ise.getItemState();
+            if (!echoSuppressor.isEcho(name, state)) {
+                metrics.countEvent("processed");
                 try {
                     if (itemRegistry != null) {
                         Item item = Objects.requireNonNull(itemRegistry).getItem(name);
+                        YandexValueCache values = deviceIndex.getValues();
                         if (item.hasTag("Yandex")) {
                             if (state instanceof PercentType) {
                                 YandexDevice yaDev;
-                                yaDev = yandexDevicesList.get(name);
+                                yaDev = deviceIndex.get(name);
                                 if (yaDev != null) {
-                                    if (!yaDev.getState().equals(item.getState())) {
-                                        YandexAliceJson eventJson = new YandexAliceJson(
-                                                (double) System.currentTimeMillis() / 1000L, uuid);
-                                        eventJson.setDeviceID(yaDev);
+                                    if (values.replace(yaDev, YandexValueCache.DEVICE_SLOT, item.getState())) {
+                                        DeviceStates states = new DeviceStates();
                                         for (YandexAliceCapabilities cap : yaDev.getCapabilities()) {
-                                            eventJson.addCapabilityState(cap, state);
+                                            YandexCallbackEncoder.putCapability(states, cap, state);
                                         }
-                                        updateCallback(eventJson.returnRequest.toString());
-                                        yaDev.setState(item.getState());
+                                        updateCallback(yaDev.getId(), states);
                                     }
                                 }
                             } else if (state instanceof OnOffType) {
                                 YandexDevice yaDev;
-                                yaDev = yandexDevicesList.get(name);
+                                yaDev = deviceIndex.get(name);
                                 if (yaDev != null) {
-                                    if (!yaDev.getState().equals(item.getState())) {
-                                        YandexAliceJson eventJson = new YandexAliceJson(
-                                                (double) System.currentTimeMillis() / 1000L, uuid);
-                                        eventJson.setDeviceID(yaDev);
+                                    if (values.replace(yaDev, YandexValueCache.DEVICE_SLOT, item.getState())) {
+                                        DeviceStates states = new DeviceStates();
                                         for (YandexAliceProperties prop : yaDev.getProperties()) {
-                                            eventJson.addPropertyState(prop, state);
+                                            YandexCallbackEncoder.putProperty(states, prop, state);
                                         }
                                         for (YandexAliceCapabilities cap : yaDev.getCapabilities()) {
-                                            eventJson.addCapabilityState(cap, state);
+                                            YandexCallbackEncoder.putCapability(states, cap, state);
                                         }
-                                        updateCallback(eventJson.returnRequest.toString());
-                                        yaDev.setState(item.getState());
+                                        updateCallback(yaDev.getId(), states);
                                     }
                                 }
-                            } else if (state instanceof DecimalType) {
+                            } else if ((state instanceof DecimalType) || (state instanceof QuantityType)) {
                                 YandexDevice yaDev;
-                                yaDev = yandexDevicesList.get(name);
+                                yaDev = deviceIndex.get(name);
                                 if (yaDev != null) {
-                                    YandexAliceJson eventJson = new YandexAliceJson(
-                                            (double) System.currentTimeMillis() / 1000L, uuid);
-                                    eventJson.setDeviceID(yaDev);
-                                    for (YandexAliceProperties prop : yaDev.getProperties()) {
-                                        eventJson.addPropertyState(prop, ((DecimalType) state).intValue());
-                                    }
-                                    updateCallback(eventJson.returnRequest.toString());
+                                    sensorReporter.update(yaDev, state);
                                 }
                             } else if (state instanceof OpenClosedType) {
                                 YandexDevice yaDev;
-                                yaDev = yandexDevicesList.get(name);
+                                yaDev = deviceIndex.get(name);
                                 if (yaDev != null) {
-                                    if (!yaDev.getState().equals(item.getState())) {
-                                        YandexAliceJson eventJson = new YandexAliceJson(
-                                                (double) System.currentTimeMillis() / 1000L, uuid);
-                                        eventJson.setDeviceID(yaDev);
+                                    if (values.replace(yaDev, YandexValueCache.DEVICE_SLOT, item.getState())) {
+                                        DeviceStates states = new DeviceStates();
                                         for (YandexAliceProperties prop : yaDev.getProperties()) {
-                                            eventJson.addPropertyState(prop, state);
+                                            YandexCallbackEncoder.putProperty(states, prop, state);
                                         }
-                                        updateCallback(eventJson.returnRequest.toString());
-                                        yaDev.setState(item.getState());
+                                        updateCallback(yaDev.getId(), states);
                                     }
                                 }
                             }
                         }
-                        if (!item.getGroupNames().isEmpty()) {
-                            boolean changed = false;
-                            YandexDevice yaDev;
-                            for (String itm : item.getGroupNames()) {
-                                GroupItem grpitem = (GroupItem) Objects.requireNonNull(itemRegistry).getItem(itm);
-                                yaDev = yandexDevicesList.get(grpitem.getName());
-                                if (yaDev != null) {
-                                    YandexAliceJson eventJson = new YandexAliceJson(
-                                            (double) System.currentTimeMillis() / 1000L, uuid);
-                                    eventJson.setDeviceID(yaDev);
-                                    if (!yaDev.getProperties().isEmpty()) {
-                                        for (YandexAliceProperties prop : yaDev.getProperties()) {
-                                            if (prop.getOhID().equals(name)) {
-                                                State st = prop.getState();
-                                                if (st != null) {
-                                                    if (!st.equals(item.getState())) {
-                                                        eventJson.addPropertyState(prop, item.getState());
-                                                        prop.setState(item.getState());
-                                                        changed = true;
-                                                    } else {
-                                                        changed = false;
-                                                    }
-                                                } else {
-                                                    prop.setState(item.getState());
-                                                    eventJson.addPropertyState(prop, item.getState());
-                                                    changed = true;
-                                                }
-                                            }
-                                        }
-                                    }
-                                    if (!yaDev.getCapabilities().isEmpty()) {
-                                        for (YandexAliceCapabilities cap : yaDev.getCapabilities()) {
-                                            if (cap.getOhID().equals(name)) {
-                                                State st = cap.getState();
-                                                if (st != null) {
-                                                    if (!st.equals(item.getState())) {
-                                                        eventJson.addCapabilityState(cap, item.getState());
-                                                        cap.setState(item.getState());
-                                                        changed = true;
-                                                    } else {
-                                                        changed = false;
-                                                    }
-                                                } else {
-                                                    cap.setState(item.getState());
-                                                    eventJson.addCapabilityState(cap, item.getState());
-                                                    changed = true;
-                                                }
-                                            } else if (cap.getCapabilityName()
-                                                    .equals(YandexDevice.CAP_COLOR_SETTINGS)) {
-                                                if (!item.hasTag("noyandex") && !item.hasTag("noYandex")) {
-                                                    if (state instanceof StringType) {
-                                                        eventJson.addCapabilityState(cap, item.getState());
-                                                        changed = true;
-                                                    } else if (state instanceof DecimalType) {
-                                                        State st = cap.getTemperatureK().getState();
-                                                        if (st != null) {
-                                                            if (!st.equals(item.getState())) {
-                                                                eventJson.addCapabilityState(cap, item.getState());
-                                                                cap.setState(item.getState());
-                                                                changed = true;
-                                                            } else {
-                                                                changed = false;
-                                                            }
-                                                        } else {
-                                                            cap.getTemperatureK().setState(item.getState());
-                                                            eventJson.addCapabilityState(cap, item.getState());
-                                                            changed = true;
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
+                        for (YandexDeviceIndex.Member member : deviceIndex.getMembers(name)) {
+                            YandexDevice yaDev = member.getDevice();
+                            DeviceStates states = new DeviceStates();
+                            for (YandexAliceProperties prop : member.getProperties()) {
+                                if (values.replace(yaDev, prop.getSlot(), item.getState())) {
+                                    YandexCallbackEncoder.putProperty(states, prop, item.getState());
+                                }
+                            }
+                            for (YandexAliceCapabilities cap : member.getCapabilities()) {
+                                if (values.replace(yaDev, cap.getSlot(), item.getState())) {
+                                    YandexCallbackEncoder.putCapability(states, cap, item.getState());
+                                }
+                            }
+                            if (!item.hasTag("noyandex") && !item.hasTag("noYandex")) {
+                                for (YandexAliceCapabilities cap : member.getColorSettings()) {
+                                    if (state instanceof StringType) {
+                                        YandexCallbackEncoder.putCapability(states, cap, item.getState());
+                                    } else if ((state instanceof DecimalType)
+                                            && values.replace(yaDev, cap.getTemperatureSlot(), item.getState())) {
+                                        YandexCallbackEncoder.putCapability(states, cap, item.getState());
                                     }
-                                    if (changed) {
-                                        updateCallback(eventJson.returnRequest.toString());
-                                    } // else {
-                                      // //logger.debug("Item {} has no changes", grpitem);
-                                      // }
-
                                 }
-                                // logger.debug("it is group member {}", yaDev);
                             }
-
+                            updateCallback(yaDev.getId(), states);
                         }
                     }
                 } catch (Exception ex) {
                     logger.debug("Event Error {}", ex.getLocalizedMessage());
                 }
             } else {
-                action = false;
+                metrics.countEvent("echo");
+                logger.debug("Skipping echo of Yandex command {} {}", name, state);
+                rememberEcho(name, state);
             }
         } catch (Exception e) {
             logger.error("ERROR Event {}", e.getLocalizedMessage());
         }
     }
 
-    private void updateCallback(String json) {
-        YandexCallbackUpdate updateAliceItem = new YandexCallbackUpdate(json);
-        Thread updateAliceItemTread = new Thread(updateAliceItem);
-        updateAliceItemTread.start();
+    /**
+     * Stores an echoed state as sent, Yandex already knows it and a later change back has to be reported.
+     */
+    private void rememberEcho(String name, State state) {
+        YandexValueCache values = deviceIndex.getValues();
+        YandexDevice yaDev = deviceIndex.get(name);
+        if (yaDev != null) {
+            values.put(yaDev, YandexValueCache.DEVICE_SLOT, state);
+        }
+        for (YandexDeviceIndex.Member member : deviceIndex.getMembers(name)) {
+            YandexDevice device = member.getDevice();
+            for (YandexAliceProperties prop : member.getProperties()) {
+                values.put(device, prop.getSlot(), state);
+            }
+            for (YandexAliceCapabilities cap : member.getCapabilities()) {
+                values.put(device, cap.getSlot(), state);
+            }
+            if (state instanceof DecimalType) {
+                for (YandexAliceCapabilities cap : member.getColorSettings()) {
+                    values.put(device, cap.getTemperatureSlot(), state);
+                }
+            }
+        }
     }
 
-    public static String getItemState(String json, @Nullable String header) {
+    private void updateCallback(String id, DeviceStates states) {
+        if (!states.isEmpty()) {
+            callbackLimiter.add(id, states);
+        }
+    }
+
+    public static void writeItemState(InputStream in, @Nullable String header, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            writeQueryResult(in, header, out);
+        } finally {
+            metrics.recordRequest("query", start);
+        }
+    }
+
+    private static void writeQueryResult(InputStream in, @Nullable String header, OutputStream out)
+            throws IOException {
         Logger logger = LoggerFactory.getLogger(YandexService.class);
-        YandexAliceJson aliceJson = new YandexAliceJson(Objects.requireNonNull(header));
+        YandexJsonWriter writer = new YandexJsonWriter(out);
+        writer.beginObject().name("request_id").value(Objects.requireNonNullElse(header, "")).name("payload")
+                .beginObject().name("devices").beginArray();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REQUEST_TIMEOUT);
+        ExecutorService executor = ThreadPoolManager.getPool(POOL_SERIALIZE);
+        List<String> ids = new ArrayList<>();
+        List<Future<byte[]>> states = new ArrayList<>();
         try {
-            JSONObject parseItem = new JSONObject(json);
-            JSONArray dev = (JSONArray) parseItem.get("devices");
-            String itemID = dev.getJSONObject(0).getString("id");
-            YandexDevice yDev = yandexDevicesList.get(itemID);
-            // Item item = itemRegistry.getItem(itemID.getString("id"));
-            aliceJson.setDeviceID(yDev);
-            if (yDev != null) {
-                if (itemRegistry != null) {
-                    Item item = Objects.requireNonNull(itemRegistry).getItem(yDev.getId());
-                    Collection<ItemChannelLink> lnk = Objects.requireNonNull(link).getLinks(item.getName());
-                    boolean realDevice = false;
-                    var getStatusObj = new Object() {
-                        ThingStatus status = ThingStatus.UNKNOWN;
-                    };
-                    if (!lnk.isEmpty()) {
-                        realDevice = true;
-                    }
-                    lnk.forEach(itemChannelLink -> {
-                        String iname = itemChannelLink.getItemName();
-                        logger.debug("linked item {} to {} channel", iname, itemChannelLink.getLinkedUID().getId());
-                        Channel cnl = Objects.requireNonNull(things).getChannel(itemChannelLink.getLinkedUID());
-                        if (cnl != null) {
-                            Thing tng = Objects.requireNonNull(things).get(cnl.getUID().getThingUID());
-                            logger.debug("status thing {}", Objects.requireNonNull(tng).getStatus().name());
-                            getStatusObj.status = tng.getStatus();
-                        }
-                    });
-                    if (realDevice) {
-                        if (!getStatusObj.status.equals(ThingStatus.ONLINE)) {
-                            aliceJson.addError("DEVICE_UNREACHABLE", yDev.getId());
-                        } else {
-                            if (!(item instanceof GroupItem)) {
-                                for (YandexAliceCapabilities cap : yDev.getCapabilities()) {
-                                    aliceJson.addCapabilityState(cap, item.getState());
-                                }
-                                for (YandexAliceProperties prop : yDev.getProperties()) {
-                                    aliceJson.addPropertyState(prop, item.getState());
-                                }
-                            } else {
-                                GroupItem groupItem = (GroupItem) item;
-                                Set<Item> grpMembers = groupItem.getAllMembers();
-                                for (Item itemGrp : grpMembers) {
-                                    for (YandexAliceCapabilities cap : yDev.getCapabilities()) {
-                                        if (cap.getOhID().equals(itemGrp.getName())) {
-                                            aliceJson.addCapabilityState(cap, itemGrp.getState());
-                                        }
-                                    }
-                                    for (YandexAliceProperties prop : yDev.getProperties()) {
-                                        if (prop.getOhID().equals(itemGrp.getName())) {
-                                            aliceJson.addPropertyState(prop, itemGrp.getState());
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    } else {
-                        if (!(item instanceof GroupItem)) {
-                            for (YandexAliceCapabilities cap : yDev.getCapabilities()) {
-                                aliceJson.addCapabilityState(cap, item.getState());
-                            }
-                            for (YandexAliceProperties prop : yDev.getProperties()) {
-                                aliceJson.addPropertyState(prop, item.getState());
-                            }
-                        } else {
-                            GroupItem groupItem = (GroupItem) item;
-                            Set<Item> grpMembers = groupItem.getAllMembers();
-                            for (Item itemGrp : grpMembers) {
-                                for (YandexAliceCapabilities cap : yDev.getCapabilities()) {
-                                    if (cap.getOhID().equals(itemGrp.getName())) {
-                                        aliceJson.addCapabilityState(cap, itemGrp.getState());
-                                    } else if (cap.getOhID().isEmpty()) {
-                                        if (!itemGrp.hasTag("noyandex") && !itemGrp.hasTag("noYandex")) {
-                                            if (itemGrp instanceof ColorItem) {
-                                                aliceJson.addCapabilityState(cap, itemGrp.getState());
-                                            } else if (itemGrp instanceof NumberItem) {
-                                                aliceJson.addCapabilityState(cap, itemGrp.getState());
-                                            } else if (itemGrp instanceof StringItem) {
-                                                logger.warn("item {} updating", itemGrp.getName());
-                                                aliceJson.addCapabilityState(cap, itemGrp.getState());
-                                            }
-                                        }
-                                    }
-                                }
-                                for (YandexAliceProperties prop : yDev.getProperties()) {
-                                    if (prop.getOhID().equals(itemGrp.getName())) {
-                                        aliceJson.addPropertyState(prop, itemGrp.getState());
-                                    }
-                                }
+            YandexRequestParser.forEachDevice(in, dev -> {
+                logger.debug("Requesting item state from Yandex: {}", dev);
+                String id = dev.getString("id");
+                ids.add(id);
+                states.add(serialize(executor, () -> getDeviceState(id)));
+            });
+        } catch (JSONException e) {
+            logger.debug("Error get item {} state", e.getLocalizedMessage());
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            byte[] state = awaitResult(id, states.get(i), deadline);
+            writer.raw(state != null ? state : deviceError(id, "INTERNAL_ERROR"));
+        }
+        writer.endArray().endObject().endObject().flush();
+    }
+
+    /**
+     * Runs the task on the serialize pool, or on the request thread when SERIALIZE_LIMIT tasks are already queued or
+     * running. The pools of ThreadPoolManager have unbounded queues, so the bound is kept here.
+     */
+    private static Future<byte[]> serialize(ExecutorService executor, Callable<byte[]> task) {
+        if (!SERIALIZE_SLOTS.tryAcquire()) {
+            FutureTask<byte[]> inline = new FutureTask<>(task);
+            inline.run();
+            return inline;
+        }
+        // done() also runs for a task cancelled before it started, so the slot is never lost
+        FutureTask<byte[]> future = new FutureTask<>(task) {
+            @Override
+            protected void done() {
+                SERIALIZE_SLOTS.release();
+            }
+        };
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.run();
+        }
+        return future;
+    }
+
+    /**
+     * Waits for the encoded answer of one device until the request deadline, or returns null if there is none.
+     */
+    private static byte @Nullable [] awaitResult(String itemID, Future<byte[]> result, long deadline) {
+        try {
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            LoggerFactory.getLogger(YandexService.class).debug("Item {} timed out", itemID);
+        } catch (ExecutionException e) {
+            LoggerFactory.getLogger(YandexService.class).debug("Error item {}: {}", itemID, e.getLocalizedMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private static byte[] deviceError(String itemID, String errorCode) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(YandexJsonWriter.FRAGMENT_SIZE);
+        new YandexJsonWriter(out, YandexJsonWriter.FRAGMENT_SIZE).beginObject().name("id").value(itemID)
+                .name("error_code").value(errorCode).endObject().flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the state of one device for the devices query response.
+     */
+    private static byte[] getDeviceState(String itemID) throws IOException {
+        try {
+            return encodeDeviceState(itemID);
+        } catch (RuntimeException e) {
+            LoggerFactory.getLogger(YandexService.class).debug("Error get item {} state", e.getLocalizedMessage());
+            return deviceError(itemID, "INTERNAL_ERROR");
+        }
+    }
+
+    private static byte[] encodeDeviceState(String itemID) throws IOException {
+        Logger logger = LoggerFactory.getLogger(YandexService.class);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(YandexJsonWriter.FRAGMENT_SIZE);
+        YandexJsonWriter writer = new YandexJsonWriter(out, YandexJsonWriter.FRAGMENT_SIZE);
+        YandexDevice yDev = deviceIndex.get(itemID);
+        Item item = null;
+        try {
+            if (yDev != null && itemRegistry != null) {
+                item = Objects.requireNonNull(itemRegistry).getItem(yDev.getId());
+            }
+        } catch (ItemNotFoundException e) {
+            logger.debug("Item {} not found", itemID);
+        }
+        writer.beginObject().name("id").value(itemID);
+        if (yDev == null || item == null) {
+            logger.debug("This device does not exist");
+            writer.name("error_code").value("DEVICE_NOT_FOUND");
+        } else if (getThingStatus(item) != ThingStatus.ONLINE) {
+            writer.name("error_code").value("DEVICE_UNREACHABLE");
+        } else if (!(item instanceof GroupItem)) {
+            writer.name("capabilities").beginArray();
+            for (YandexAliceCapabilities cap : yDev.getCapabilities()) {
+                YandexStateEncoder.writeCapabilityState(writer, cap, item.getState());
+            }
+            writer.endArray().name("properties").beginArray();
+            for (YandexAliceProperties prop : yDev.getProperties()) {
+                YandexStateEncoder.writePropertyState(writer, prop, item.getState());
+            }
+            writer.endArray();
+        } else {
+            Set<Item> grpMembers = ((GroupItem) item).getAllMembers();
+            writer.name("capabilities").beginArray();
+            for (Item itemGrp : grpMembers) {
+                for (YandexAliceCapabilities cap : yDev.getCapabilities()) {
+                    if (cap.getOhID().equals(itemGrp.getName())) {
+                        YandexStateEncoder.writeCapabilityState(writer, cap, itemGrp.getState());
+                    } else if (cap.getOhID().isEmpty()) {
+                        if (!itemGrp.hasTag("noyandex") && !itemGrp.hasTag("noYandex")) {
+                            if ((itemGrp instanceof ColorItem) || (itemGrp instanceof NumberItem)
+                                    || (itemGrp instanceof StringItem)) {
+                                YandexStateEncoder.writeCapabilityState(writer, cap, itemGrp.getState());
                             }
                         }
                     }
                 }
-            } else {
-                logger.debug("This device does not exist");
             }
-        } catch (Exception e) {
-            logger.debug("Error get item {} state", e.getLocalizedMessage());
+            writer.endArray().name("properties").beginArray();
+            for (Item itemGrp : grpMembers) {
+                for (YandexAliceProperties prop : yDev.getProperties()) {
+                    if (prop.getOhID().equals(itemGrp.getName())) {
+                        YandexStateEncoder.writePropertyState(writer, prop, itemGrp.getState());
+                    }
+                }
+            }
+            writer.endArray();
+        }
+        writer.endObject().flush();
+        return out.toByteArray();
+    }
+
+    /**
+     * Status of the thing the item is linked to. Items without links are treated as online.
+     */
+    private static ThingStatus getThingStatus(Item item) {
+        Logger logger = LoggerFactory.getLogger(YandexService.class);
+        ThingStatus status = ThingStatus.ONLINE;
+        Collection<ItemChannelLink> lnk = Objects.requireNonNull(link).getLinks(item.getName());
+        if (!lnk.isEmpty()) {
+            status = ThingStatus.UNKNOWN;
+        }
+        for (ItemChannelLink itemChannelLink : lnk) {
+            logger.debug("linked item {} to {} channel", itemChannelLink.getItemName(),
+                    itemChannelLink.getLinkedUID().getId());
+            Channel cnl = Objects.requireNonNull(things).getChannel(itemChannelLink.getLinkedUID());
+            if (cnl != null) {
+                Thing tng = Objects.requireNonNull(things).get(cnl.getUID().getThingUID());
+                if (tng != null) {
+                    logger.debug("status thing {}", tng.getStatus().name());
+                    status = tng.getStatus();
+                }
+            }
+        }
+        return status;
+    }
+
+    public static void writeItemsList(@Nullable String header, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            discoveryCache.write(Objects.requireNonNullElse(header, ""), uuid, out);
+        } finally {
+            metrics.recordRequest("discovery", start);
         }
-        return aliceJson.returnRequest.toString();
     }
 
-    public static String getItemsList(@Nullable String header) {
+    /**
+     * Builds the Yandex device model of an item tagged with "Yandex".
+     *
+     * @return the device, or null when the item cannot be exposed to Yandex
+     */
+    static @Nullable YandexDevice createDevice(Item item) {
         final Logger logger = LoggerFactory.getLogger(YandexService.class);
-        if (itemRegistry != null) {
-            Collection<Item> itemsList = Objects.requireNonNull(itemRegistry).getItems();
-            YandexAliceJson json = new YandexAliceJson(Objects.requireNonNull(header));
-            json.setUserDevices(uuid);
-            for (Item item : itemsList) {
-                if (item.hasTag("Yandex")) {
-                    if (item instanceof ColorItem) {
-                        YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
-                                DEV_LIGHT, item.getState());
-                        yDev.addCapabilities(item.getName(), YandexDevice.CAP_COLOR_SETTINGS);
-                        json.createDevice(yDev);
-                        json.addCapabilities(yDev);
-                        yandexDevicesList.put(item.getName(), yDev);
-                    } else if (item instanceof DimmerItem) {
-                        logger.debug("this is Dimmer Item");
-                        YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
-                                DEV_LIGHT, item.getState());
-                        yDev.addCapabilities(item.getName(), YandexDevice.CAP_RANGE);
-                        json.createDevice(yDev);
-                        json.addCapabilities(yDev);
-                        yandexDevicesList.put(item.getName(), yDev);
-                    } else if (item instanceof SwitchItem) {
-                        if (item.hasTag("Lightbulb")) {
-                            YandexDevice yDev = new YandexDevice(item.getName(),
-                                    Objects.requireNonNull(item.getLabel()), DEV_LIGHT, item.getState());
-                            yDev.addCapabilities(item.getName(), YandexDevice.CAP_ON_OFF);
-                            json.createDevice(yDev);
-                            json.addCapabilities(yDev);
-                            yandexDevicesList.put(item.getName(), yDev);
-                        } else if (item.hasTag("PowerOutlet")) {
-                            YandexDevice yDev = new YandexDevice(item.getName(),
-                                    Objects.requireNonNull(item.getLabel()), DEV_SOCKET, item.getState());
-                            yDev.addCapabilities(item.getName(), YandexDevice.CAP_ON_OFF);
-                            json.createDevice(yDev);
-                            json.addCapabilities(yDev);
-                            yandexDevicesList.put(item.getName(), yDev);
+        if (item instanceof ColorItem) {
+            YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
+                    DEV_LIGHT, item.getState());
+            yDev.addCapabilities(item.getName(), YandexDevice.CAP_COLOR_SETTINGS);
+            return yDev;
+        } else if (item instanceof DimmerItem) {
+            logger.debug("this is Dimmer Item");
+            YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
+                    DEV_LIGHT, item.getState());
+            yDev.addCapabilities(item.getName(), YandexDevice.CAP_RANGE);
+            return yDev;
+        } else if (item instanceof SwitchItem) {
+            if (item.hasTag("Lightbulb")) {
+                YandexDevice yDev = new YandexDevice(item.getName(),
+                        Objects.requireNonNull(item.getLabel()), DEV_LIGHT, item.getState());
+                yDev.addCapabilities(item.getName(), YandexDevice.CAP_ON_OFF);
+                return yDev;
+            } else if (item.hasTag("PowerOutlet")) {
+                YandexDevice yDev = new YandexDevice(item.getName(),
+                        Objects.requireNonNull(item.getLabel()), DEV_SOCKET, item.getState());
+                yDev.addCapabilities(item.getName(), YandexDevice.CAP_ON_OFF);
+                return yDev;
+            } else {
+                YandexDevice yDev = new YandexDevice(item.getName(),
+                        Objects.requireNonNull(item.getLabel()), DEV_SWITCH, item.getState());
+                yDev.addCapabilities(item.getName(), YandexDevice.CAP_ON_OFF);
+                return yDev;
+            }
+        } else if (item instanceof NumberItem) {
+            // todo number item list
+            YandexDevice yDev;
+            if (item.hasTag("smart_meter")) {
+                yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
+                        DEV_SMART_METER, item.getState());
+            } else {
+                yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()), DEV_SENSOR,
+                        item.getState());
+            }
+            var ref = new Object() {
+                String instance = "";
+                String unit = "";
+            };
+            Set<String> tags = item.getTags();
+            for (String tag : tags) {
+                YandexTagRules.Rule rule = YandexTagRules.FLOAT.match(tag);
+                if (rule != null) {
+                    ref.instance = rule.getInstance();
+                    ref.unit = rule.getUnit();
+                }
+            }
+            if (item.hasTag("Temperature")) {
+                if (item.hasTag("kelvin")) {
+                    yDev.addProperties(item.getName(), YandexDevice.PROP_FLOAT, YandexDevice.FLOAT_TEMP,
+                            YandexDevice.UNIT_TEMP_KELVIN);
+                } else {
+                    yDev.addProperties(item.getName(), YandexDevice.PROP_FLOAT, YandexDevice.FLOAT_TEMP,
+                            YandexDevice.UNIT_TEMP_CELSIUS);
+                }
+            } else {
+                yDev.addProperties(item.getName(), YandexDevice.PROP_FLOAT, ref.instance, ref.unit);
+            }
+            return yDev;
+        } else if (item instanceof ContactItem) {
+            String type = YandexTagRules.contactType(item.getTags());
+            if (!type.isEmpty()) {
+                YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()), type,
+                        item.getState());
+                yDev.addProperties(YandexDevice.PROP_EVENT, YandexDevice.EVENT_OPEN);
+                return yDev;
+            }
+        } else if (item instanceof RollershutterItem) {
+            logger.debug("RollerShutter");
+            YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
+                    DEV_CURTAIN, item.getState());
+            yDev.addProperties(YandexDevice.PROP_EVENT, YandexDevice.EVENT_OPEN);
+            yDev.addCapabilities(item.getName(), YandexDevice.CAP_RANGE, YandexDevice.EVENT_OPEN,
+                    YandexDevice.UNIT_PERCENT, 0, 100, 1.0);
+            // yDev.addCapabilities(YandexDevice.CAP_ON_OFF);
+            return yDev;
+        } else if (item instanceof GroupItem) {
+            // logger.debug("It`s a GROUP!");
+            GroupItem groupItem = (GroupItem) item;
+            Set<Item> grpMembers = groupItem.getAllMembers();
+            YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
+                    YandexTagRules.deviceType(groupItem.getTags(), getDeviceTypes()), item.getState());
+            for (Item grpItem : grpMembers) {
+                if (!grpItem.hasTag("noyandex")) {
+                    if (grpItem.getType().equals("Switch")) {
+                        if (grpItem.hasTag("toggle")) {
+                            // TODO toggle
+                            logger.debug("this is GROUP Switch TOGGLE mode");
+                            Set<String> tags = grpItem.getTags();
+                            var ref = new Object() {
+                                String instance = "";
+                            };
+                            for (String tag : tags) {
+                                YandexTagRules.Rule rule = YandexTagRules.TOGGLE.match(tag);
+                                if (rule != null) {
+                                    ref.instance = rule.getInstance();
+                                }
+                            }
+                            yDev.addCapabilities(grpItem.getName(), YandexDevice.CAP_TOGGLE, ref.instance,
+                                    "", 0, 0, 0.0);
+                        } else if (grpItem.hasTag(YandexDevice.EVENT_MOTION)) {
+                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
+                                    YandexDevice.EVENT_MOTION, "");
+                        } else if (grpItem.hasTag(YandexDevice.EVENT_WATER_LEAK)) {
+                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
+                                    YandexDevice.EVENT_WATER_LEAK, "");
+                        } else if (grpItem.hasTag(YandexDevice.EVENT_SMOKE)) {
+                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
+                                    YandexDevice.EVENT_SMOKE, "");
                         } else {
-                            YandexDevice yDev = new YandexDevice(item.getName(),
-                                    Objects.requireNonNull(item.getLabel()), DEV_SWITCH, item.getState());
-                            yDev.addCapabilities(item.getName(), YandexDevice.CAP_ON_OFF);
-                            json.createDevice(yDev);
-                            json.addCapabilities(yDev);
-                            yandexDevicesList.put(item.getName(), yDev);
+                            logger.debug("this is GROUP Switch ON_OFF mode");
+                            yDev.addCapabilities(grpItem.getName(), YandexDevice.CAP_ON_OFF);
                         }
-                    } else if (item instanceof NumberItem) {
-                        // todo number item list
-                        YandexDevice yDev;
-                        if (item.hasTag("smart_meter")) {
-                            yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
-                                    DEV_SMART_METER, item.getState());
-                        } else {
-                            yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()), DEV_SENSOR,
-                                    item.getState());
+                    } else if (grpItem instanceof ColorItem) {
+                        Set<String> tags = grpItem.getTags();
+                        if (tags.stream().anyMatch(tag -> tag.equals("color_model"))) {
+                            YandexAliceCapabilities.ColorSettingsModel colorSettingsModel = new YandexAliceCapabilities.ColorSettingsModel();
+                            colorSettingsModel.setOhID(grpItem.getName());
+                            colorSettingsModel.setModel(true);
+                            List<YandexAliceCapabilities> caps = yDev.getCapabilities();
+                            if (caps.isEmpty()) {
+                                yDev.addCapabilities("", YandexDevice.CAP_COLOR_SETTINGS,
+                                        colorSettingsModel);
+                            } else {
+                                if (caps.stream().anyMatch(
+                                        cs -> cs.capabilityName.equals(YandexDevice.CAP_COLOR_SETTINGS))) {
+                                    caps.stream()
+                                            .filter(cs -> cs.capabilityName
+                                                    .equals(YandexDevice.CAP_COLOR_SETTINGS))
+                                            .findFirst().get().setColorModel(colorSettingsModel);
+                                } else {
+                                    yDev.addCapabilities("", YandexDevice.CAP_COLOR_SETTINGS);
+                                    caps = yDev.getCapabilities();
+                                    caps.stream()
+                                            .filter(cs -> cs.capabilityName
+                                                    .equals(YandexDevice.CAP_COLOR_SETTINGS))
+                                            .findFirst().get().setColorModel(colorSettingsModel);
+                                }
+                            }
                         }
+                        // json.addCapabilities(yDev);
+                    } else if ((grpItem instanceof NumberItem) || (grpItem instanceof DimmerItem)) {
+                        logger.debug("this is GROUP Number ");
+                        Set<String> tags = grpItem.getTags();
+                        String capName = "";
                         var ref = new Object() {
                             String instance = "";
                             String unit = "";
                         };
-                        Set<String> tags = item.getTags();
-                        json.createDevice(yDev);
-                        for (String tag : tags) {
-                            YandexDevice.FLOAT_LIST.forEach((v) -> {
-                                if (v.contains(tag.toLowerCase())) {
-                                    ref.instance = v;
-                                    switch (v) {
-                                        case YandexDevice.FLOAT_AMPERAGE:
-                                            ref.unit = YandexDevice.UNIT_AMPERE;
-                                            break;
-                                        case YandexDevice.FLOAT_BATTERY_LEVEL:
-                                        case YandexDevice.FLOAT_WATER_LEVEL:
-                                        case YandexDevice.FLOAT_HUMIDITY:
-                                        case YandexDevice.FLOAT_FOOD_LEVEL:
-                                            ref.unit = YandexDevice.UNIT_PERCENT;
-                                            break;
-                                        case YandexDevice.FLOAT_CO2:
-                                            ref.unit = YandexDevice.UNIT_PPM;
-                                            break;
-                                        case YandexDevice.FLOAT_ILLUMINATION:
-                                            ref.unit = YandexDevice.UNIT_LUX;
-                                            break;
-                                        case YandexDevice.FLOAT_PM1_DENSITY:
-                                        case YandexDevice.FLOAT_TVOC:
-                                        case YandexDevice.FLOAT_PM10_DENSITY:
-                                        case YandexDevice.FLOAT_PM25_DENSITY:
-                                            ref.unit = YandexDevice.UNIT_MCG_M3;
-                                            break;
-                                        case YandexDevice.FLOAT_POWER:
-                                            ref.unit = YandexDevice.UNIT_WATT;
-                                            break;
-                                        case YandexDevice.FLOAT_PRESSURE:
-                                            ref.unit = YandexDevice.UNIT_BAR;
-                                            break;
-                                        case YandexDevice.FLOAT_TEMP:
-                                            ref.unit = YandexDevice.UNIT_TEMP_CELSIUS;
-                                            break;
-                                        case YandexDevice.FLOAT_VOLTAGE:
-                                            ref.unit = YandexDevice.UNIT_VOLT;
-                                            break;
-                                        case YandexDevice.FLOAT_ELECTRICITY_METER:
-                                            ref.unit = YandexDevice.UNIT_KILOWATT_HOUR;
-                                            break;
-                                        case YandexDevice.FLOAT_GAS_METER, YandexDevice.FLOAT_WATER_METER:
-                                            ref.unit = YandexDevice.UNIT_CUBIC_METER;
-                                            break;
-                                        case YandexDevice.FLOAT_HEAT_METER:
-                                            ref.unit = YandexDevice.UNIT_GIGACALORIE;
-                                            break;
+                        int minRange = 0, maxRange = 100;
+                        double precision = 1.0;
+                        StateDescription sd = grpItem.getStateDescription();
+                        if (sd != null) {
+                            if (sd.getMinimum() != null) {
+                                BigDecimal mr = sd.getMinimum();
+                                if (mr != null) {
+                                    minRange = mr.intValue();
+                                }
+                            }
+                            if (sd.getMaximum() != null) {
+                                BigDecimal mr = sd.getMaximum();
+                                if (mr != null) {
+                                    maxRange = mr.intValue();
+                                }
+                            }
 
-                                    }
+                            if (sd.getStep() != null) {
+                                BigDecimal st = sd.getStep();
+                                if (st != null) {
+                                    precision = st.doubleValue();
                                 }
-                            });
+                            }
                         }
-                        if (item.hasTag("Temperature")) {
-                            if (item.hasTag("kelvin")) {
-                                yDev.addProperties(item.getName(), YandexDevice.PROP_FLOAT, YandexDevice.FLOAT_TEMP,
-                                        YandexDevice.UNIT_TEMP_KELVIN);
-                            } else {
-                                yDev.addProperties(item.getName(), YandexDevice.PROP_FLOAT, YandexDevice.FLOAT_TEMP,
-                                        YandexDevice.UNIT_TEMP_CELSIUS);
+                        // int minRange = 0, maxRange = 0, precision = 0;
+                        for (String tag : tags) {
+                            if (YandexDevice.CAP_RANGE.contains(tag)) {
+                                capName = YandexDevice.CAP_RANGE;
+                            } else if (tag.contains("min=")) {
+                                minRange = Integer.parseInt(tag.split("=")[1]);
+                            } else if (tag.contains("max=")) {
+                                maxRange = Integer.parseInt(tag.split("=")[1]);
+                            } else if (tag.contains("step=")) {
+                                precision = Double.parseDouble(tag.split("=")[1]);
+                            }
+                            YandexTagRules.Rule rule = YandexTagRules.RANGE.match(tag);
+                            if (rule != null) {
+                                ref.instance = rule.getInstance();
+                                ref.unit = rule.getUnit();
+                            }
+                            rule = YandexTagRules.FLOAT.match(tag);
+                            if (rule != null) {
+                                ref.instance = rule.getInstance();
+                                ref.unit = rule.getUnit();
+                            }
+                            if ("temperature_k".equals(tag)) {
+                                List<YandexAliceCapabilities> caps = yDev.getCapabilities();
+                                if (caps.isEmpty() || caps.stream().noneMatch(
+                                        c -> c.capabilityName.equals(YandexDevice.CAP_COLOR_SETTINGS))) {
+                                    yDev.addCapabilities("", YandexDevice.CAP_COLOR_SETTINGS);
+                                }
+                                caps.forEach(colset -> {
+                                    String capname = colset.getCapabilityName();
+                                    if (YandexDevice.CAP_COLOR_SETTINGS.equals(capname)) {
+                                        YandexAliceCapabilities.ColorSettingsTemperature colorSettingsTemperature = new YandexAliceCapabilities.ColorSettingsTemperature();
+                                        colorSettingsTemperature.setOhID(grpItem.getName());
+                                        colorSettingsTemperature.setTemp(true);
+                                        colset.setTemperatureK(colorSettingsTemperature);
+                                    }
+                                });
                             }
-                        } else {
-                            yDev.addProperties(item.getName(), YandexDevice.PROP_FLOAT, ref.instance, ref.unit);
                         }
-                        json.addProperties(yDev);
-                        yandexDevicesList.put(item.getName(), yDev);
-                    } else if (item instanceof ContactItem) {
-                        if ((item.hasTag("Door")) || (item.hasTag("GarageDoor")) || (item.hasTag("FrontDoor"))
-                                || (item.hasTag("CellarDoor")) || (item.hasTag("SideDoor"))
-                                || (item.hasTag("BackDoor"))) {
-                            YandexDevice yDev = new YandexDevice(item.getName(),
-                                    Objects.requireNonNull(item.getLabel()), DEV_SENSOR_OPEN, item.getState());
-                            json.createDevice(yDev);
-                            yDev.addProperties(YandexDevice.PROP_EVENT, YandexDevice.EVENT_OPEN);
-                            json.addProperties(yDev);
-                            yandexDevicesList.put(item.getName(), yDev);
-                        } else if ((item.hasTag("Blinds")) || (item.hasTag("Window"))) {
-                            YandexDevice yDev = new YandexDevice(item.getName(),
-                                    Objects.requireNonNull(item.getLabel()), DEV_OPENABLE, item.getState());
-                            json.createDevice(yDev);
-                            yDev.addProperties(YandexDevice.PROP_EVENT, YandexDevice.EVENT_OPEN);
-                            json.addProperties(yDev);
-                            yandexDevicesList.put(item.getName(), yDev);
+                        if (capName.isEmpty()) {
+                            List<YandexAliceCapabilities> caps = yDev.getCapabilities();
+                            if (caps.stream().noneMatch(temper -> temper.getTemperatureK().isTemp())) {
+                                yDev.addProperties(grpItem.getName(), YandexDevice.PROP_FLOAT, ref.instance,
+                                        ref.unit);
+                            }
+                        } else {
+                            yDev.addCapabilities(grpItem.getName(), capName, ref.instance, ref.unit,
+                                    minRange, maxRange, precision);
                         }
-                    } else if (item instanceof RollershutterItem) {
-                        logger.debug("RollerShutter");
-                        YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
-                                DEV_CURTAIN, item.getState());
-                        json.createDevice(yDev);
-                        yDev.addProperties(YandexDevice.PROP_EVENT, YandexDevice.EVENT_OPEN);
-                        yDev.addCapabilities(item.getName(), YandexDevice.CAP_RANGE, YandexDevice.EVENT_OPEN,
-                                YandexDevice.UNIT_PERCENT, 0, 100, 1.0);
-                        // yDev.addCapabilities(YandexDevice.CAP_ON_OFF);
-                        json.addProperties(yDev);
-                        json.addCapabilities(yDev);
-                        yandexDevicesList.put(item.getName(), yDev);
-                    } else if (item instanceof GroupItem) {
-                        // logger.debug("It`s a GROUP!");
-                        GroupItem groupItem = (GroupItem) item;
-                        Set<Item> grpMembers = groupItem.getAllMembers();
-                        var dev = new Object() {
-                            String devType = "";
-                        };
-                        // if (devicesList.isEmpty()) {
-                        // logger.warn("Cannot get list of devices");
-                        // getDevicesList();
-                        // }
-                        DEV_LIST.forEach((v) -> {
-                            for (String tag : groupItem.getTags()) {
-                                if (v.endsWith(tag.toLowerCase())) {
-                                    dev.devType = v;
-                                    break;
-                                }
+                    } else if (grpItem instanceof StringItem) {
+                        String capName = "";
+                        String instance = "";
+                        logger.debug("This is string");
+                        Set<String> tags = grpItem.getTags();
+                        Collection<String> modesCol = null;
+                        ArrayList<String> toRemove = new ArrayList<>();
+                        ArrayList<String> toAdd = new ArrayList<>();
+                        List<StateOption> opt = null;
+                        StateDescription options = grpItem.getStateDescription();
+                        boolean setDefaultValues = true;
+                        if (options != null) {
+                            opt = options.getOptions();
+                            if (!opt.isEmpty()) {
+                                if (!opt.get(0).getValue().isEmpty())
+                                    setDefaultValues = false;
                             }
-                        });
-                        YandexDevice yDev = new YandexDevice(item.getName(), Objects.requireNonNull(item.getLabel()),
-                                dev.devType, item.getState());
-                        json.createDevice(yDev);
-                        for (Item grpItem : grpMembers) {
-                            if (!grpItem.hasTag("noyandex")) {
-                                if (grpItem.getType().equals("Switch")) {
-                                    if (grpItem.hasTag("toggle")) {
-                                        // TODO toggle
-                                        logger.debug("this is GROUP Switch TOGGLE mode");
-                                        Set<String> tags = grpItem.getTags();
-                                        var ref = new Object() {
-                                            String instance = "";
-                                        };
-                                        for (String tag : tags) {
-                                            YandexDevice.TOGGLE_LIST.forEach((v) -> {
-                                                if (v.contains(tag.toLowerCase())) {
-                                                    ref.instance = v;
-                                                }
-                                            });
-                                        }
-                                        yDev.addCapabilities(grpItem.getName(), YandexDevice.CAP_TOGGLE, ref.instance,
-                                                "", 0, 0, 0.0);
-                                    } else if (grpItem.hasTag(YandexDevice.EVENT_MOTION)) {
-                                        yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                YandexDevice.EVENT_MOTION, "");
-                                    } else if (grpItem.hasTag(YandexDevice.EVENT_WATER_LEAK)) {
-                                        yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                YandexDevice.EVENT_WATER_LEAK, "");
-                                    } else if (grpItem.hasTag(YandexDevice.EVENT_SMOKE)) {
-                                        yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                YandexDevice.EVENT_SMOKE, "");
-                                    } else {
-                                        logger.debug("this is GROUP Switch ON_OFF mode");
-                                        yDev.addCapabilities(grpItem.getName(), YandexDevice.CAP_ON_OFF);
-                                    }
-                                } else if (grpItem instanceof ColorItem) {
-                                    Set<String> tags = grpItem.getTags();
-                                    if (tags.stream().anyMatch(tag -> tag.equals("color_model"))) {
-                                        YandexAliceCapabilities.ColorSettingsModel colorSettingsModel = new YandexAliceCapabilities.ColorSettingsModel();
-                                        colorSettingsModel.setOhID(grpItem.getName());
-                                        colorSettingsModel.setModel(true);
-                                        List<YandexAliceCapabilities> caps = yDev.getCapabilities();
-                                        if (caps.isEmpty()) {
-                                            yDev.addCapabilities("", YandexDevice.CAP_COLOR_SETTINGS,
-                                                    colorSettingsModel);
-                                        } else {
-                                            if (caps.stream().anyMatch(
-                                                    cs -> cs.capabilityName.equals(YandexDevice.CAP_COLOR_SETTINGS))) {
-                                                caps.stream()
-                                                        .filter(cs -> cs.capabilityName
-                                                                .equals(YandexDevice.CAP_COLOR_SETTINGS))
-                                                        .findFirst().get().setColorModel(colorSettingsModel);
-                                            } else {
-                                                yDev.addCapabilities("", YandexDevice.CAP_COLOR_SETTINGS);
-                                                caps = yDev.getCapabilities();
-                                                caps.stream()
-                                                        .filter(cs -> cs.capabilityName
-                                                                .equals(YandexDevice.CAP_COLOR_SETTINGS))
-                                                        .findFirst().get().setColorModel(colorSettingsModel);
-                                            }
-                                        }
-                                    }
-                                    // json.addCapabilities(yDev);
-                                } else if ((grpItem instanceof NumberItem) || (grpItem instanceof DimmerItem)) {
-                                    logger.debug("this is GROUP Number ");
-                                    Set<String> tags = grpItem.getTags();
-                                    String capName = "";
-                                    var ref = new Object() {
-                                        String instance = "";
-                                        String unit = "";
-                                    };
-                                    int minRange = 0, maxRange = 100;
-                                    double precision = 1.0;
-                                    StateDescription sd = grpItem.getStateDescription();
-                                    if (sd != null) {
-                                        if (sd.getMinimum() != null) {
-                                            BigDecimal mr = sd.getMinimum();
-                                            if (mr != null) {
-                                                minRange = mr.intValue();
-                                            }
-                                        }
-                                        if (sd.getMaximum() != null) {
-                                            BigDecimal mr = sd.getMaximum();
-                                            if (mr != null) {
-                                                maxRange = mr.intValue();
-                                            }
-                                        }
-
-                                        if (sd.getStep() != null) {
-                                            BigDecimal st = sd.getStep();
-                                            if (st != null) {
-                                                precision = st.doubleValue();
+                        }
+                        for (String tag : tags) {
+                            if ("scenes".equalsIgnoreCase(tag)) {
+                                ArrayList<String> scenes = new ArrayList<>();
+                                if (options != null) {
+                                    opt = options.getOptions();
+                                    if (!opt.isEmpty()) {
+                                        if (!opt.get(0).getValue().isEmpty()) {
+                                            for (StateOption stateOption : opt) {
+                                                if (YandexDevice.SCENES_LIST
+                                                        .contains(stateOption.getValue())) {
+                                                    scenes.add(stateOption.getValue());
+                                                } else
+                                                    logger.debug("I don't know scene {}",
+                                                            stateOption.getValue());
                                             }
+                                            // yDev.setSceneColorCapabilities(scenes, grpItem.getName());
                                         }
                                     }
-                                    // int minRange = 0, maxRange = 0, precision = 0;
-                                    for (String tag : tags) {
-                                        if (YandexDevice.CAP_RANGE.contains(tag)) {
-                                            capName = YandexDevice.CAP_RANGE;
-                                        } else if (tag.contains("min=")) {
-                                            minRange = Integer.parseInt(tag.split("=")[1]);
-                                        } else if (tag.contains("max=")) {
-                                            maxRange = Integer.parseInt(tag.split("=")[1]);
-                                        } else if (tag.contains("step=")) {
-                                            precision = Double.parseDouble(tag.split("=")[1]);
-                                        }
-                                        YandexDevice.RANGE_LIST.forEach((v) -> {
-                                            if (v.contains(tag.toLowerCase())) {
-                                                ref.instance = v;
-                                                switch (v) {
-                                                    case YandexDevice.RANGE_TEMPERATURE:
-                                                        ref.unit = YandexDevice.UNIT_TEMP_CELSIUS;
-                                                        break;
-                                                    case YandexDevice.RANGE_BRIGHTNESS:
-                                                    case YandexDevice.RANGE_HUMIDITY:
-                                                    case YandexDevice.RANGE_OPEN:
-                                                        ref.unit = YandexDevice.UNIT_PERCENT;
-                                                        break;
-                                                    case YandexDevice.RANGE_CHANNEL:
-                                                        ref.unit = "";
-                                                        break;
-                                                    case YandexDevice.RANGE_VOLUME:
-                                                        if ("percent".equals(tag)) {
-                                                            ref.unit = YandexDevice.UNIT_PERCENT;
-                                                        } else
-                                                            ref.unit = "";
-                                                        break;
-                                                }
+                                }
+                                for (String scnTags : tags) {
+                                    if (YandexDevice.SCENES_LIST.contains(scnTags.toLowerCase())) {
+                                        YandexDevice.SCENES_LIST.forEach((list) -> {
+                                            if (list.equals(scnTags)) {
+                                                scenes.add(scnTags);
                                             }
                                         });
-                                        YandexDevice.FLOAT_LIST.forEach((v) -> {
-                                            if (v.contains(tag.toLowerCase())) {
-                                                ref.instance = v;
-                                                switch (v) {
-                                                    case YandexDevice.FLOAT_AMPERAGE:
-                                                        ref.unit = YandexDevice.UNIT_AMPERE;
-                                                        break;
-                                                    case YandexDevice.FLOAT_BATTERY_LEVEL:
-                                                    case YandexDevice.FLOAT_WATER_LEVEL:
-                                                    case YandexDevice.FLOAT_HUMIDITY:
-                                                    case YandexDevice.FLOAT_FOOD_LEVEL:
-                                                        ref.unit = YandexDevice.UNIT_PERCENT;
-                                                        break;
-                                                    case YandexDevice.FLOAT_CO2:
-                                                        ref.unit = YandexDevice.UNIT_PPM;
-                                                        break;
-                                                    case YandexDevice.FLOAT_ILLUMINATION:
-                                                        ref.unit = YandexDevice.UNIT_LUX;
-                                                        break;
-                                                    case YandexDevice.FLOAT_PM1_DENSITY:
-                                                    case YandexDevice.FLOAT_TVOC:
-                                                    case YandexDevice.FLOAT_PM10_DENSITY:
-                                                    case YandexDevice.FLOAT_PM25_DENSITY:
-                                                        ref.unit = YandexDevice.UNIT_MCG_M3;
-                                                        break;
-                                                    case YandexDevice.FLOAT_POWER:
-                                                        ref.unit = YandexDevice.UNIT_WATT;
-                                                        break;
-                                                    case YandexDevice.FLOAT_PRESSURE:
-                                                        ref.unit = YandexDevice.UNIT_BAR;
-                                                        break;
-                                                    case YandexDevice.FLOAT_TEMP:
-                                                        ref.unit = YandexDevice.UNIT_TEMP_CELSIUS;
-                                                        break;
-                                                    case YandexDevice.FLOAT_VOLTAGE:
-                                                        ref.unit = YandexDevice.UNIT_VOLT;
-                                                        break;
-                                                    case YandexDevice.FLOAT_ELECTRICITY_METER:
-                                                        ref.unit = YandexDevice.UNIT_KILOWATT_HOUR;
-                                                        break;
-                                                    case YandexDevice.FLOAT_GAS_METER, YandexDevice.FLOAT_WATER_METER:
-                                                        ref.unit = YandexDevice.UNIT_CUBIC_METER;
-                                                        break;
-                                                    case YandexDevice.FLOAT_HEAT_METER:
-                                                        ref.unit = YandexDevice.UNIT_GIGACALORIE;
-                                                        break;
 
-                                                }
-                                            }
-                                        });
-                                        if ("temperature_k".equals(tag)) {
-                                            List<YandexAliceCapabilities> caps = yDev.getCapabilities();
-                                            if (caps.isEmpty() || caps.stream().noneMatch(
-                                                    c -> c.capabilityName.equals(YandexDevice.CAP_COLOR_SETTINGS))) {
-                                                yDev.addCapabilities("", YandexDevice.CAP_COLOR_SETTINGS);
-                                            }
-                                            caps.forEach(colset -> {
-                                                String capname = colset.getCapabilityName();
-                                                if (YandexDevice.CAP_COLOR_SETTINGS.equals(capname)) {
-                                                    YandexAliceCapabilities.ColorSettingsTemperature colorSettingsTemperature = new YandexAliceCapabilities.ColorSettingsTemperature();
-                                                    colorSettingsTemperature.setOhID(grpItem.getName());
-                                                    colorSettingsTemperature.setTemp(true);
-                                                    colset.setTemperatureK(colorSettingsTemperature);
-                                                }
-                                            });
-                                        }
-                                    }
-                                    if (capName.isEmpty()) {
-                                        List<YandexAliceCapabilities> caps = yDev.getCapabilities();
-                                        if (caps.stream().noneMatch(temper -> temper.getTemperatureK().isTemp())) {
-                                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_FLOAT, ref.instance,
-                                                    ref.unit);
-                                        }
-                                    } else {
-                                        yDev.addCapabilities(grpItem.getName(), capName, ref.instance, ref.unit,
-                                                minRange, maxRange, precision);
-                                    }
-                                } else if (grpItem instanceof StringItem) {
-                                    String capName = "";
-                                    String instance = "";
-                                    logger.debug("This is string");
-                                    Set<String> tags = grpItem.getTags();
-                                    Collection<String> modesCol = null;
-                                    ArrayList<String> toRemove = new ArrayList<>();
-                                    ArrayList<String> toAdd = new ArrayList<>();
-                                    List<StateOption> opt = null;
-                                    StateDescription options = grpItem.getStateDescription();
-                                    boolean setDefaultValues = true;
-                                    if (options != null) {
-                                        opt = options.getOptions();
-                                        if (!opt.isEmpty()) {
-                                            if (!opt.get(0).getValue().isEmpty())
-                                                setDefaultValues = false;
-                                        }
                                     }
-                                    for (String tag : tags) {
-                                        if ("scenes".equalsIgnoreCase(tag)) {
-                                            ArrayList<String> scenes = new ArrayList<>();
-                                            if (options != null) {
-                                                opt = options.getOptions();
-                                                if (!opt.isEmpty()) {
-                                                    if (!opt.get(0).getValue().isEmpty()) {
-                                                        for (StateOption stateOption : opt) {
-                                                            if (YandexDevice.SCENES_LIST
-                                                                    .contains(stateOption.getValue())) {
-                                                                scenes.add(stateOption.getValue());
-                                                            } else
-                                                                logger.debug("I don't know scene {}",
-                                                                        stateOption.getValue());
-                                                        }
-                                                        // yDev.setSceneColorCapabilities(scenes, grpItem.getName());
-                                                    }
-                                                }
-                                            }
-                                            for (String scnTags : tags) {
-                                                if (YandexDevice.SCENES_LIST.contains(scnTags.toLowerCase())) {
-                                                    YandexDevice.SCENES_LIST.forEach((list) -> {
-                                                        if (list.equals(scnTags)) {
-                                                            scenes.add(scnTags);
-                                                        }
-                                                    });
-
-                                                }
-                                            }
-                                            if (scenes.isEmpty()) {
-                                                yDev.setSceneColorCapabilities(YandexDevice.SCENES_LIST,
-                                                        grpItem.getName());
-                                            } else {
-                                                yDev.setSceneColorCapabilities(scenes, grpItem.getName());
-                                            }
-                                        }
-                                        if (YandexDevice.CAP_MODE.contains(tag.toLowerCase())) {
-                                            capName = YandexDevice.CAP_MODE;
-                                        }
-                                        if (tag.equalsIgnoreCase(YandexDevice.MODE_CLEANUP)) {
-                                            instance = YandexDevice.MODE_CLEANUP;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_CLEANUP);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_COFFEE)) {
-                                            instance = YandexDevice.MODE_COFFEE;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_COFFEE);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_DISHWASHING)) {
-                                            instance = YandexDevice.MODE_DISHWASHING;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_DISHWASHING);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_FAN_SPEED)) {
-                                            instance = YandexDevice.MODE_FAN_SPEED;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_FAN_SPEED);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_HEAT)) {
-                                            instance = YandexDevice.MODE_HEAT;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_HEAT);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_INPUT_SOURCE)) {
-                                            instance = YandexDevice.MODE_INPUT_SOURCE;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_INPUT_SOURCE);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_PROGRAM)) {
-                                            instance = YandexDevice.MODE_PROGRAM;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_PROGRAM);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_SWING)) {
-                                            instance = YandexDevice.MODE_SWING;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_SWING);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_THERMOSTAT)) {
-                                            instance = YandexDevice.MODE_THERMOSTAT;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_THERMOSTAT);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_TEA)) {
-                                            instance = YandexDevice.MODE_TEA;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_TEA);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.MODE_WORK_SPEED)) {
-                                            instance = YandexDevice.MODE_WORK_SPEED;
-                                            if (setDefaultValues) {
-                                                modesCol = new ArrayList<>(YandexDevice.DEFAULT_WORK_SPEED);
-                                            }
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.EVENT_MOTION)) {
-                                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                    YandexDevice.EVENT_MOTION, "");
-                                            ((StringItem) grpItem).setStateDescriptionService((text,
-                                                    locale) -> StateDescriptionFragmentBuilder.create().withOptions(
-                                                            List.of(new StateOption("detected", "detected"),
-                                                                    new StateOption("not_detected", "not detected")))
-                                                            .build().toStateDescription());
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.EVENT_VIBRATION)) {
-                                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                    YandexDevice.EVENT_VIBRATION, "");
-                                            ((StringItem) grpItem).setStateDescriptionService(
-                                                    (text, locale) -> StateDescriptionFragmentBuilder.create()
-                                                            .withOptions(List.of(new StateOption("tilt", "tilt"),
-                                                                    new StateOption("fall", "fall"),
-                                                                    new StateOption("vibration", "vibration")))
-                                                            .build().toStateDescription());
-                                        } else if (tag.equalsIgnoreCase(YandexDevice.EVENT_BUTTON)) {
-                                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                    YandexDevice.EVENT_BUTTON, "");
-                                            ((StringItem) grpItem).setStateDescriptionService(
-                                                    (text, locale) -> StateDescriptionFragmentBuilder.create()
-                                                            .withOptions(List.of(new StateOption("click", "click"),
-                                                                    new StateOption("double_click", "double_click"),
-                                                                    new StateOption("long_press", "long_press")))
-                                                            .build().toStateDescription());
-                                        }
-                                        if (setDefaultValues) {
-                                            if (tag.toLowerCase().startsWith("-")) {
-                                                YandexDevice.OPER_LIST.forEach((ops) -> {
-                                                    if (ops.equals(tag.toLowerCase().substring(1))) {
-                                                        toRemove.add(tag.toLowerCase().substring(1));
-                                                    }
-                                                });
-                                            } else if (tag.toLowerCase().startsWith("+")) {
-                                                YandexDevice.OPER_LIST.forEach((ops) -> {
-                                                    if (ops.equals(tag.toLowerCase().substring(1))) {
-                                                        toAdd.add(tag.toLowerCase().substring(1));
-                                                    }
-                                                });
-                                            }
+                                }
+                                if (scenes.isEmpty()) {
+                                    yDev.setSceneColorCapabilities(YandexDevice.SCENES_LIST,
+                                            grpItem.getName());
+                                } else {
+                                    yDev.setSceneColorCapabilities(scenes, grpItem.getName());
+                                }
+                            }
+                            if (YandexDevice.CAP_MODE.contains(tag.toLowerCase())) {
+                                capName = YandexDevice.CAP_MODE;
+                            }
+                            YandexTagRules.Rule mode = YandexTagRules.MODE.match(tag);
+                            if (mode != null) {
+                                capName = mode.getCapability();
+                                instance = mode.getInstance();
+                                if (setDefaultValues) {
+                                    modesCol = new ArrayList<>(mode.getModes());
+                                }
+                            } else if (tag.equalsIgnoreCase(YandexDevice.EVENT_MOTION)) {
+                                yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
+                                        YandexDevice.EVENT_MOTION, "");
+                                ((StringItem) grpItem).setStateDescriptionService((text,
+                                        locale) -> StateDescriptionFragmentBuilder.create().withOptions(
+                                                List.of(new StateOption("detected", "detected"),
+                                                        new StateOption("not_detected", "not detected")))
+                                                .build().toStateDescription());
+                            } else if (tag.equalsIgnoreCase(YandexDevice.EVENT_VIBRATION)) {
+                                yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
+                                        YandexDevice.EVENT_VIBRATION, "");
+                                ((StringItem) grpItem).setStateDescriptionService(
+                                        (text, locale) -> StateDescriptionFragmentBuilder.create()
+                                                .withOptions(List.of(new StateOption("tilt", "tilt"),
+                                                        new StateOption("fall", "fall"),
+                                                        new StateOption("vibration", "vibration")))
+                                                .build().toStateDescription());
+                            } else if (tag.equalsIgnoreCase(YandexDevice.EVENT_BUTTON)) {
+                                yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
+                                        YandexDevice.EVENT_BUTTON, "");
+                                ((StringItem) grpItem).setStateDescriptionService(
+                                        (text, locale) -> StateDescriptionFragmentBuilder.create()
+                                                .withOptions(List.of(new StateOption("click", "click"),
+                                                        new StateOption("double_click", "double_click"),
+                                                        new StateOption("long_press", "long_press")))
+                                                .build().toStateDescription());
+                            }
+                            if (setDefaultValues) {
+                                if (tag.toLowerCase().startsWith("-")) {
+                                    YandexDevice.OPER_LIST.forEach((ops) -> {
+                                        if (ops.equals(tag.toLowerCase().substring(1))) {
+                                            toRemove.add(tag.toLowerCase().substring(1));
                                         }
-                                    }
-                                    if (!setDefaultValues) {
-                                        modesCol = new ArrayList<>();
-                                        if (opt != null) {
-                                            for (StateOption stateOption : opt) {
-                                                if (YandexDevice.OPER_LIST.contains(stateOption.getValue())) {
-                                                    modesCol.add(stateOption.getValue());
-                                                } else
-                                                    logger.debug("I don't know operation {}", stateOption.getValue());
-                                            }
-                                        } else
-                                            logger.debug("options is null");
-                                    }
-                                    if (modesCol != null) {
-                                        modesCol.addAll(toAdd);
-                                        modesCol.removeAll(toRemove);
-                                        logger.warn("Group init complete. modesCol: {}, toRemove {}, toAdd {}",
-                                                modesCol, toRemove, toAdd);
-                                        if (!modesCol.isEmpty()) {
-                                            yDev.addCapabilities(grpItem.getName(), capName, instance, modesCol);
+                                    });
+                                } else if (tag.toLowerCase().startsWith("+")) {
+                                    YandexDevice.OPER_LIST.forEach((ops) -> {
+                                        if (ops.equals(tag.toLowerCase().substring(1))) {
+                                            toAdd.add(tag.toLowerCase().substring(1));
                                         }
-                                    } else {
-                                        logger.debug("modesCol is null!");
-                                    }
-                                } else if (grpItem instanceof ContactItem) {
-                                    if ((grpItem.hasTag("Door")) || (grpItem.hasTag("GarageDoor"))
-                                            || (grpItem.hasTag("FrontDoor")) || (grpItem.hasTag("CellarDoor"))
-                                            || (grpItem.hasTag("SideDoor")) || (grpItem.hasTag("BackDoor"))) {
-                                        yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                YandexDevice.EVENT_OPEN, "");
-                                    } else if ((grpItem.hasTag("Blinds")) || (grpItem.hasTag("Window"))) {
-                                        yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
-                                                YandexDevice.EVENT_OPEN, "");
-                                    }
+                                    });
+                                }
+                            }
+                        }
+                        if (!setDefaultValues) {
+                            modesCol = new ArrayList<>();
+                            if (opt != null) {
+                                for (StateOption stateOption : opt) {
+                                    if (YandexDevice.OPER_LIST.contains(stateOption.getValue())) {
+                                        modesCol.add(stateOption.getValue());
+                                    } else
+                                        logger.debug("I don't know operation {}", stateOption.getValue());
                                 }
+                            } else
+                                logger.debug("options is null");
+                        }
+                        if (modesCol != null) {
+                            modesCol.addAll(toAdd);
+                            modesCol.removeAll(toRemove);
+                            logger.warn("Group init complete. modesCol: {}, toRemove {}, toAdd {}",
+                                    modesCol, toRemove, toAdd);
+                            if (!modesCol.isEmpty()) {
+                                yDev.addCapabilities(grpItem.getName(), capName, instance, modesCol);
                             }
+                        } else {
+                            logger.debug("modesCol is null!");
+                        }
+                    } else if (grpItem instanceof ContactItem) {
+                        if (!YandexTagRules.contactType(grpItem.getTags()).isEmpty()) {
+                            yDev.addProperties(grpItem.getName(), YandexDevice.PROP_EVENT,
+                                    YandexDevice.EVENT_OPEN, "");
                         }
-                        json.addCapabilities(yDev);
-                        json.addProperties(yDev);
-                        yandexDevicesList.put(item.getName(), yDev);
                     }
                 }
             }
-            logger.debug("Items list response: {}", json.returnRequest);
-            return json.returnRequest.toString();
+            return yDev;
+        }
+        return null;
+    }
+
+    public static void writeActionResult(InputStream in, @Nullable String header, OutputStream out)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            executeActions(in, header, out);
+        } finally {
+            metrics.recordRequest("action", start);
         }
-        return "";
     }
 
-    public static String setItemState(String json, @Nullable String header) {
+    private static void executeActions(InputStream in, @Nullable String header, OutputStream out) throws IOException {
         final Logger logger = LoggerFactory.getLogger(YandexService.class);
-        action = true;
-        JSONObject answer = new JSONObject();
-        JSONObject payload = new JSONObject();
-        JSONArray devices = new JSONArray();
-        answer.put("payload", payload);
-        answer.put("request_id", header);
-        // Collection<ItemChannelLink> lnk = link.getAll();
-        // lnk.forEach(itemChannelLink -> {
-        // String iname = itemChannelLink.getItemName();
-        // logger.debug("linked item {} to {} channel", iname, itemChannelLink.getLinkedUID().getId());
-        // Thing cnl = things.get(things.getChannel(itemChannelLink.getLinkedUID()).getUID().getThingUID());
-        // logger.debug("status thing {}", cnl.getStatus().name());
-        // });
+        YandexJsonWriter writer = new YandexJsonWriter(out);
+        writer.beginObject().name("request_id").value(Objects.requireNonNullElse(header, "")).name("payload")
+                .beginObject().name("devices").beginArray();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REQUEST_TIMEOUT);
+        ExecutorService executor = ThreadPoolManager.getPool(POOL_SERIALIZE);
+        List<String> ids = new ArrayList<>();
+        List<Future<byte[]>> results = new ArrayList<>();
         try {
-            JSONArray parseItem = new JSONObject(json).getJSONObject("payload").getJSONArray("devices");
-            for (int i = 0; i < parseItem.length(); i++) {
-                JSONObject dev = parseItem.getJSONObject(i);
-                String id = dev.getString("id");
-                JSONArray capabilities = dev.getJSONArray("capabilities");
-                JSONObject state = capabilities.getJSONObject(0).getJSONObject("state");
-                String type = capabilities.getJSONObject(0).getString("type");
-                boolean realDevice = false;
-                var getStatusObj = new Object() {
-                    ThingStatus status = ThingStatus.UNKNOWN;
-                };
+            YandexRequestParser.forEachDevice(in, dev -> {
+                logger.debug("Action item from Yandex: {}", dev);
                 if ((itemRegistry != null) && (eventPublisher != null)) {
-                    logger.debug("setItemState {}", id);
-                    try {
-                        Item item = Objects.requireNonNull(itemRegistry).getItem(id);
-                        Collection<ItemChannelLink> lnk = Objects.requireNonNull(link).getLinks(item.getName());
-                        if (!lnk.isEmpty()) {
-                            realDevice = true;
-                        }
-                        lnk.forEach(itemChannelLink -> {
-                            String iname = itemChannelLink.getItemName();
-                            logger.debug("linked item {} to {} channel", iname, itemChannelLink.getLinkedUID().getId());
-                            Channel cnl = Objects.requireNonNull(things).getChannel(itemChannelLink.getLinkedUID());
-                            if (cnl != null) {
-                                Thing tng = Objects.requireNonNull(things).get(cnl.getUID().getThingUID());
-                                logger.debug("status thing {}", Objects.requireNonNull(tng).getStatus().name());
-                                getStatusObj.status = tng.getStatus();
-                            }
-                        });
-                        String status;
-                        if (realDevice) {
-                            if (!getStatusObj.status.equals(ThingStatus.ONLINE)) {
-                                status = "ERROR";
-                            } else {
-                                status = publishState(id, item, state, type);
-                            }
-                        } else {
-                            status = publishState(id, item, state, type);
-                        }
-                        JSONObject itemJson = new JSONObject();
-                        itemJson.put("id", item.getName());
-                        if ("DONE".equals(status)) {
-                            itemJson.put("action_result", new JSONObject().put("status", "DONE"));
-                        } else if ("ERROR".equals(status)) {
-                            itemJson.put("action_result",
-                                    new JSONObject().put("status", "ERROR").put("error_code", "DEVICE_UNREACHABLE"));
-                        }
-                        devices.put(itemJson);
-                    } catch (Exception e) {
-                        JSONObject itemJson = new JSONObject();
-                        itemJson.put("id", id);
-                        itemJson.put("action_result",
-                                new JSONObject().put("status", "ERROR").put("error_code", "DEVICE_UNREACHABLE"));
-                        devices.put(itemJson);
-                        logger.debug("Error {}", e.getLocalizedMessage());
-                    }
+                    String id = dev.getString("id");
+                    ids.add(id);
+                    results.add(serialize(executor, () -> executeAction(id, dev)));
                 }
+            });
+        } catch (JSONException e) {
+            logger.error("Error get item {} state", e.getLocalizedMessage());
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            String id = ids.get(i);
+            byte[] result = awaitResult(id, results.get(i), deadline);
+            writer.raw(result != null ? result : actionResult(id, "ERROR"));
+        }
+        writer.endArray().endObject().endObject().flush();
+    }
+
+    private static byte[] executeAction(String id, JSONObject dev) throws IOException {
+        final Logger logger = LoggerFactory.getLogger(YandexService.class);
+        logger.debug("setItemState {}", id);
+        String status = "ERROR";
+        try {
+            JSONObject capability = dev.getJSONArray("capabilities").getJSONObject(0);
+            Item item = Objects.requireNonNull(itemRegistry).getItem(id);
+            if (getThingStatus(item) == ThingStatus.ONLINE) {
+                status = publishState(id, item, capability.getJSONObject("state"), capability.getString("type"));
             }
-            payload.put("devices", devices);
         } catch (Exception e) {
-            logger.error("Error get item {} state", e.getLocalizedMessage());
+            logger.debug("Error {}", e.getLocalizedMessage());
+        }
+        return actionResult(id, status);
+    }
+
+    private static byte[] actionResult(String id, String status) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(YandexJsonWriter.FRAGMENT_SIZE);
+        YandexJsonWriter writer = new YandexJsonWriter(out, YandexJsonWriter.FRAGMENT_SIZE);
+        writer.beginObject().name("id").value(id).name("action_result").beginObject().name("status").value(status);
+        if (!"DONE".equals(status)) {
+            writer.name("error_code").value("DEVICE_UNREACHABLE");
         }
-        logger.debug("State JSON is: {}", answer);
-        return answer.toString();
+        writer.endObject().endObject().flush();
+        return out.toByteArray();
+    }
+
+    private static void postCommand(String itemName, Command command) {
+        echoSuppressor.expect(itemName, command);
+        Objects.requireNonNull(eventPublisher).post(ItemEventFactory.createCommandEvent(itemName, command));
     }
 
     private static String publishState(String id, Item item, JSONObject state, String type) {
         try {
             if (item instanceof ColorItem) {
                 JSONObject value = state.getJSONObject("value");
-                Objects.requireNonNull(eventPublisher).post(ItemEventFactory.createCommandEvent(id,
-                        HSBType.valueOf(value.get("h") + "," + value.get("s") + "," + value.get("v"))));
+                postCommand(id, HSBType.valueOf(value.get("h") + "," + value.get("s") + "," + value.get("v")));
             } else if (item instanceof DimmerItem) {
                 int value = state.getInt("value");
-                Objects.requireNonNull(eventPublisher)
-                        .post(ItemEventFactory.createCommandEvent(id, PercentType.valueOf(String.valueOf(value))));
+                postCommand(id, PercentType.valueOf(String.valueOf(value)));
             } else if (item instanceof SwitchItem) {
                 boolean value = state.getBoolean("value");
                 if (value) {
-                    Objects.requireNonNull(eventPublisher).post(ItemEventFactory.createCommandEvent(id, OnOffType.ON));
+                    postCommand(id, OnOffType.ON);
                 } else {
-                    Objects.requireNonNull(eventPublisher).post(ItemEventFactory.createCommandEvent(id, OnOffType.OFF));
+                    postCommand(id, OnOffType.OFF);
                 }
             } else if (item instanceof GroupItem) {
                 GroupItem groupItem = (GroupItem) item;
                 Set<Item> grpMembers = groupItem.getAllMembers();
-                YandexDevice yaDev = yandexDevicesList.get(item.getName());
+                YandexDevice yaDev = deviceIndex.get(item.getName());
                 if (yaDev != null) {
                     List<YandexAliceCapabilities> caps = yaDev.getCapabilities();
                     for (YandexAliceCapabilities cp : caps) {
@@ -1234,20 +1143,16 @@ public class YandexService implements EventSubscriber {
                                     if (memItem instanceof ColorItem) {
                                         String instance = state.getString("instance");
                                         if ("scene".equals(instance)) {
-                                            Objects.requireNonNull(eventPublisher)
-                                                    .post(ItemEventFactory.createCommandEvent(cp.getScenesOhID(),
-                                                            StringType.valueOf(state.getString("value"))));
+                                            postCommand(cp.getScenesOhID(),
+                                                    StringType.valueOf(state.getString("value")));
                                         } else if ("temperature_k".equals(instance)) {
-                                            Objects.requireNonNull(eventPublisher)
-                                                    .post(ItemEventFactory.createCommandEvent(
-                                                            cp.getTemperatureK().getOhID(), DecimalType
-                                                                    .valueOf(String.valueOf(state.getInt("value")))));
+                                            postCommand(cp.getTemperatureK().getOhID(),
+                                                    DecimalType.valueOf(String.valueOf(state.getInt("value"))));
                                         } else {
                                             JSONObject value = state.getJSONObject("value");
-                                            Objects.requireNonNull(eventPublisher)
-                                                    .post(ItemEventFactory.createCommandEvent(cp.getOhID(),
-                                                            HSBType.valueOf(value.get("h") + "," + value.get("s") + ","
-                                                                    + value.get("v"))));
+                                            postCommand(cp.getOhID(),
+                                                    HSBType.valueOf(value.get("h") + "," + value.get("s") + ","
+                                                            + value.get("v")));
                                         }
                                     } else if (memItem instanceof DimmerItem) {
                                         int value = 0;
@@ -1267,30 +1172,23 @@ public class YandexService implements EventSubscriber {
                                             value = state.getInt("value");
                                         }
                                         if (instance.equals(cp.getInstance())) {
-                                            Objects.requireNonNull(eventPublisher)
-                                                    .post(ItemEventFactory.createCommandEvent(cp.getOhID(),
-                                                            PercentType.valueOf(String.valueOf(value))));
+                                            postCommand(cp.getOhID(), PercentType.valueOf(String.valueOf(value)));
                                         }
                                     } else if (memItem instanceof SwitchItem) {
                                         boolean value = state.getBoolean("value");
                                         if (value) {
-                                            Objects.requireNonNull(eventPublisher).post(
-                                                    ItemEventFactory.createCommandEvent(cp.getOhID(), OnOffType.ON));
+                                            postCommand(cp.getOhID(), OnOffType.ON);
                                         } else {
-                                            Objects.requireNonNull(eventPublisher).post(
-                                                    ItemEventFactory.createCommandEvent(cp.getOhID(), OnOffType.OFF));
+                                            postCommand(cp.getOhID(), OnOffType.OFF);
                                         }
                                     } else if (memItem instanceof NumberItem) {
                                         double value = state.getDouble("value");
                                         String instance = state.getString("instance");
                                         if (instance.equals(cp.getInstance())) {
-                                            Objects.requireNonNull(eventPublisher)
-                                                    .post(ItemEventFactory.createCommandEvent(cp.getOhID(),
-                                                            DecimalType.valueOf(String.valueOf(value))));
+                                            postCommand(cp.getOhID(), DecimalType.valueOf(String.valueOf(value)));
                                         }
                                     } else if (memItem instanceof StringItem) {
-                                        Objects.requireNonNull(eventPublisher).post(ItemEventFactory.createCommandEvent(
-                                                cp.getOhID(), StringType.valueOf(state.getString("value"))));
+                                        postCommand(cp.getOhID(), StringType.valueOf(state.getString("value")));
                                     }
                                 } else if (cp.getOhID().isEmpty()) {
                                     if (!memItem.hasTag("noyandex") && !memItem.hasTag("noYandex")) {
@@ -1298,27 +1196,22 @@ public class YandexService implements EventSubscriber {
                                             String instance = state.getString("instance");
                                             if ("hsv".equals(instance)) {
                                                 JSONObject value = state.getJSONObject("value");
-                                                Objects.requireNonNull(eventPublisher)
-                                                        .post(ItemEventFactory.createCommandEvent(
-                                                                cp.getColorModel().getOhID(),
-                                                                HSBType.valueOf(value.get("h") + "," + value.get("s")
-                                                                        + "," + value.get("v"))));
+                                                postCommand(cp.getColorModel().getOhID(),
+                                                        HSBType.valueOf(value.get("h") + "," + value.get("s") + ","
+                                                                + value.get("v")));
                                             }
                                         } else if (memItem instanceof NumberItem) {
                                             String instance = state.getString("instance");
                                             if ("temperature_k".equals(instance)) {
-                                                Objects.requireNonNull(eventPublisher)
-                                                        .post(ItemEventFactory.createCommandEvent(
-                                                                cp.getTemperatureK().getOhID(), DecimalType.valueOf(
-                                                                        String.valueOf(state.getInt("value")))));
+                                                postCommand(cp.getTemperatureK().getOhID(),
+                                                        DecimalType.valueOf(String.valueOf(state.getInt("value"))));
                                             }
                                         } else if (memItem instanceof StringItem) {
 
                                             String instance = state.getString("instance");
                                             if ("scene".equals(instance)) {
-                                                Objects.requireNonNull(eventPublisher)
-                                                        .post(ItemEventFactory.createCommandEvent(cp.getScenesOhID(),
-                                                                StringType.valueOf(state.getString("value"))));
+                                                postCommand(cp.getScenesOhID(),
+                                                        StringType.valueOf(state.getString("value")));
                                             }
                                         }
                                     }
@@ -1366,18 +1259,32 @@ public class YandexService implements EventSubscriber {
     // return capabilitiesArray;
     // }
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    protected void setMeterRegistryProvider(MeterRegistryProvider meterRegistryProvider) {
+        metrics.bind(meterRegistryProvider.getOHMeterRegistry(), callbackDispatcher);
+    }
+
+    protected void unsetMeterRegistryProvider(MeterRegistryProvider meterRegistryProvider) {
+        metrics.unbind();
+    }
+
     @Deactivate
     protected void deactivate() {
+        YandexDeviceTypes deviceTypes = YandexService.deviceTypes;
+        if (deviceTypes != null) {
+            deviceTypes.stop();
+        }
+        sensorReporter.stop();
+        // held back states go down the pipeline into the journal before requests are aborted
+        callbackLimiter.stop();
+        callbackBatcher.stop();
+        callbackDispatcher.stop();
         try {
             httpClient.stop();
         } catch (Exception ignored) {
         }
-        ScheduledFuture<?> refreshPollingJob = this.refreshPollingJob;
-        if (refreshPollingJob != null && !refreshPollingJob.isCancelled()) {
-            refreshPollingJob.cancel(true);
-            this.refreshPollingJob = null;
-        }
-        yandexDevicesList.clear();
+        deviceIndex.stop();
+        echoSuppressor.clear();
     }
 
     // private static JSONArray getCapabilitiesState(Item item) {
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link YandexStateEncoder} writes openHAB states as Yandex capability and property states.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexStateEncoder {
+
+    private YandexStateEncoder() {
+    }
+
+    /**
+     * Writes the capability state object, or nothing when the state does not fit the capability.
+     */
+    public static void writeCapabilityState(YandexJsonWriter writer, YandexAliceCapabilities capability, State state)
+            throws IOException {
+        String type = capability.getCapabilityName();
+        String instance = capabilityInstance(capability, state);
+        if (state instanceof OnOffType) {
+            stateStart(writer, type, instance).value(state.equals(OnOffType.ON));
+        } else if (state instanceof HSBType) {
+            HSBType hsb = (HSBType) state;
+            stateStart(writer, type, instance).beginObject().name("h").value(hsb.getHue().intValue()).name("s")
+                    .value(hsb.getSaturation().intValue()).name("v").value(hsb.getBrightness().intValue())
+                    .endObject();
+        } else if (state instanceof PercentType) {
+            if (YandexDevice.CAP_ON_OFF.equals(type)) {
+                stateStart(writer, type, instance).value(((PercentType) state).intValue() > 0);
+            } else {
+                stateStart(writer, type, instance).value(((PercentType) state).intValue());
+            }
+        } else if ((state instanceof DecimalType) || (state instanceof QuantityType)) {
+            stateStart(writer, type, instance).value(((Number) state).doubleValue());
+        } else if (state instanceof StringType) {
+            stateStart(writer, type, instance).value(state.toString());
+        } else {
+            return;
+        }
+        writer.endObject().endObject();
+    }
+
+    /**
+     * Returns the instance a capability state is reported with, which for color settings depends on the state.
+     */
+    public static String capabilityInstance(YandexAliceCapabilities capability, State state) {
+        if (state instanceof HSBType) {
+            return "hsv";
+        } else if (state instanceof PercentType) {
+            return capability.getInstance();
+        } else if (((state instanceof DecimalType) || (state instanceof QuantityType))
+                && capability.getTemperatureK().isTemp()) {
+            return "temperature_k";
+        } else if ((state instanceof StringType)
+                && YandexDevice.CAP_COLOR_SETTINGS.equals(capability.getCapabilityName())) {
+            return "scene";
+        }
+        return capability.getInstance();
+    }
+
+    /**
+     * Writes the property state object, or nothing when the state does not fit the property.
+     */
+    public static void writePropertyState(YandexJsonWriter writer, YandexAliceProperties property, State state)
+            throws IOException {
+        String instance = property.getInstance();
+        String value;
+        if ((state instanceof DecimalType) || (state instanceof QuantityType)) {
+            if (!YandexDevice.EVENT_OPEN.equals(instance)) {
+                stateStart(writer, property.getPropName(), instance).value(((Number) state).doubleValue());
+                writer.endObject().endObject();
+                return;
+            }
+            value = ((Number) state).intValue() == 0 ? "closed" : "opened";
+        } else if (state instanceof OpenClosedType) {
+            value = state.equals(OpenClosedType.CLOSED) ? "closed" : "opened";
+        } else if (state instanceof OnOffType) {
+            boolean on = state.equals(OnOffType.ON);
+            switch (instance) {
+                case YandexDevice.EVENT_MOTION:
+                case YandexDevice.EVENT_SMOKE:
+                case YandexDevice.EVENT_GAS:
+                    value = on ? "detected" : "not_detected";
+                    break;
+                case YandexDevice.EVENT_WATER_LEAK:
+                    value = on ? "leak" : "dry";
+                    break;
+                case YandexDevice.EVENT_BATTERY_LEVEL:
+                    value = on ? "low" : "normal";
+                    break;
+                default:
+                    return;
+            }
+        } else if ((state instanceof StringType) && YandexDevice.EVENT_BUTTON.equals(instance)) {
+            value = state.toString();
+        } else {
+            return;
+        }
+        stateStart(writer, property.getPropName(), instance).value(value);
+        writer.endObject().endObject();
+    }
+
+    private static YandexJsonWriter stateStart(YandexJsonWriter writer, String type, String instance)
+            throws IOException {
+        return writer.beginObject().name("type").value(type).name("state").beginObject().name("instance")
+                .value(instance).name("value");
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_OPENABLE;
+import static org.openhab.io.yandexalice.internal.constants.YandexAliceDevicesConstants.DEV_SENSOR_OPEN;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link YandexTagRules} maps item tags to Yandex capabilities, instances, units and default modes. Every table
+ * is compiled once into a hash lookup, so a tag is resolved with one lookup. In the float, range and toggle tables a
+ * tag selects the last instance that contains it, in the mode table the instance it names. The device type of a
+ * contact depends on the door or window tag it carries, and the device type of a group is the last one of the device
+ * type catalogue that ends with one of the tags. The catalogue is compiled again only when it is replaced.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexTagRules {
+    public static final YandexTagRules FLOAT = new YandexTagRules(YandexDevice.PROP_FLOAT, YandexDevice.FLOAT_LIST,
+            Map.ofEntries(Map.entry(YandexDevice.FLOAT_AMPERAGE, YandexDevice.UNIT_AMPERE),
+                    Map.entry(YandexDevice.FLOAT_BATTERY_LEVEL, YandexDevice.UNIT_PERCENT),
+                    Map.entry(YandexDevice.FLOAT_WATER_LEVEL, YandexDevice.UNIT_PERCENT),
+                    Map.entry(YandexDevice.FLOAT_HUMIDITY, YandexDevice.UNIT_PERCENT),
+                    Map.entry(YandexDevice.FLOAT_FOOD_LEVEL, YandexDevice.UNIT_PERCENT),
+                    Map.entry(YandexDevice.FLOAT_CO2, YandexDevice.UNIT_PPM),
+                    Map.entry(YandexDevice.FLOAT_ILLUMINATION, YandexDevice.UNIT_LUX),
+                    Map.entry(YandexDevice.FLOAT_PM1_DENSITY, YandexDevice.UNIT_MCG_M3),
+                    Map.entry(YandexDevice.FLOAT_TVOC, YandexDevice.UNIT_MCG_M3),
+                    Map.entry(YandexDevice.FLOAT_PM10_DENSITY, YandexDevice.UNIT_MCG_M3),
+                    Map.entry(YandexDevice.FLOAT_PM25_DENSITY, YandexDevice.UNIT_MCG_M3),
+                    Map.entry(YandexDevice.FLOAT_POWER, YandexDevice.UNIT_WATT),
+                    Map.entry(YandexDevice.FLOAT_PRESSURE, YandexDevice.UNIT_BAR),
+                    Map.entry(YandexDevice.FLOAT_TEMP, YandexDevice.UNIT_TEMP_CELSIUS),
+                    Map.entry(YandexDevice.FLOAT_VOLTAGE, YandexDevice.UNIT_VOLT),
+                    Map.entry(YandexDevice.FLOAT_ELECTRICITY_METER, YandexDevice.UNIT_KILOWATT_HOUR),
+                    Map.entry(YandexDevice.FLOAT_GAS_METER, YandexDevice.UNIT_CUBIC_METER),
+                    Map.entry(YandexDevice.FLOAT_WATER_METER, YandexDevice.UNIT_CUBIC_METER),
+                    Map.entry(YandexDevice.FLOAT_HEAT_METER, YandexDevice.UNIT_GIGACALORIE)));
+    public static final YandexTagRules RANGE = new YandexTagRules(YandexDevice.CAP_RANGE, YandexDevice.RANGE_LIST,
+            Map.of(YandexDevice.RANGE_TEMPERATURE, YandexDevice.UNIT_TEMP_CELSIUS, YandexDevice.RANGE_BRIGHTNESS,
+                    YandexDevice.UNIT_PERCENT, YandexDevice.RANGE_HUMIDITY, YandexDevice.UNIT_PERCENT,
+                    YandexDevice.RANGE_OPEN, YandexDevice.UNIT_PERCENT, YandexDevice.RANGE_CHANNEL, "",
+                    YandexDevice.RANGE_VOLUME, ""));
+    public static final YandexTagRules TOGGLE = new YandexTagRules(YandexDevice.CAP_TOGGLE, YandexDevice.TOGGLE_LIST,
+            Map.of());
+    public static final YandexTagRules MODE = new YandexTagRules(YandexDevice.CAP_MODE,
+            Map.ofEntries(Map.entry(YandexDevice.MODE_CLEANUP, YandexDevice.DEFAULT_CLEANUP),
+                    Map.entry(YandexDevice.MODE_COFFEE, YandexDevice.DEFAULT_COFFEE),
+                    Map.entry(YandexDevice.MODE_DISHWASHING, YandexDevice.DEFAULT_DISHWASHING),
+                    Map.entry(YandexDevice.MODE_FAN_SPEED, YandexDevice.DEFAULT_FAN_SPEED),
+                    Map.entry(YandexDevice.MODE_HEAT, YandexDevice.DEFAULT_HEAT),
+                    Map.entry(YandexDevice.MODE_INPUT_SOURCE, YandexDevice.DEFAULT_INPUT_SOURCE),
+                    Map.entry(YandexDevice.MODE_PROGRAM, YandexDevice.DEFAULT_PROGRAM),
+                    Map.entry(YandexDevice.MODE_SWING, YandexDevice.DEFAULT_SWING),
+                    Map.entry(YandexDevice.MODE_THERMOSTAT, YandexDevice.DEFAULT_THERMOSTAT),
+                    Map.entry(YandexDevice.MODE_TEA, YandexDevice.DEFAULT_TEA),
+                    Map.entry(YandexDevice.MODE_WORK_SPEED, YandexDevice.DEFAULT_WORK_SPEED)));
+    private static final Map<String, String> CONTACT_TYPES = Map.of("Door", DEV_SENSOR_OPEN, "GarageDoor",
+            DEV_SENSOR_OPEN, "FrontDoor", DEV_SENSOR_OPEN, "CellarDoor", DEV_SENSOR_OPEN, "SideDoor", DEV_SENSOR_OPEN,
+            "BackDoor", DEV_SENSOR_OPEN, "Blinds", DEV_OPENABLE, "Window", DEV_OPENABLE);
+    private static volatile DeviceTypes deviceTypes = new DeviceTypes(List.of());
+
+    private final Map<String, Rule> rules = new HashMap<>();
+
+    /**
+     * The capability or property a tag resolves to, with its instance, its unit and the default modes, empty when
+     * the table has none.
+     */
+    public static class Rule {
+        private final String capability;
+        private final String instance;
+        private final String unit;
+        private final List<String> modes;
+
+        Rule(String capability, String instance, String unit, Collection<String> modes) {
+            this.capability = capability;
+            this.instance = instance;
+            this.unit = unit;
+            this.modes = List.copyOf(modes);
+        }
+
+        public String getCapability() {
+            return capability;
+        }
+
+        public String getInstance() {
+            return instance;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public List<String> getModes() {
+            return modes;
+        }
+    }
+
+    private YandexTagRules(String capability, Collection<String> instances, Map<String, String> units) {
+        for (String instance : instances) {
+            Rule rule = new Rule(capability, instance, units.getOrDefault(instance, ""), List.of());
+            for (int start = 0; start <= instance.length(); start++) {
+                for (int end = start; end <= instance.length(); end++) {
+                    rules.put(instance.substring(start, end), rule);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles a table matching whole instance names only, each with its default modes.
+     */
+    private YandexTagRules(String capability, Map<String, Collection<String>> modes) {
+        modes.forEach((instance, defaults) -> rules.put(instance, new Rule(capability, instance, "", defaults)));
+    }
+
+    public @Nullable Rule match(String tag) {
+        return rules.get(tag.toLowerCase());
+    }
+
+    /**
+     * Returns the device type of a contact item, a door tag wins over a window tag, or an empty string.
+     */
+    public static String contactType(Collection<String> tags) {
+        String found = "";
+        for (String tag : tags) {
+            String type = CONTACT_TYPES.get(tag);
+            if (DEV_SENSOR_OPEN.equals(type)) {
+                return type;
+            } else if (type != null) {
+                found = type;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the type of the catalogue selected by the tags of a group, or an empty string if no tag names a known
+     * type.
+     */
+    public static String deviceType(Collection<String> tags, List<String> types) {
+        DeviceTypes compiled = deviceTypes;
+        if (compiled.types != types) {
+            compiled = new DeviceTypes(types);
+            deviceTypes = compiled;
+        }
+        int found = -1;
+        for (String tag : tags) {
+            Integer index = compiled.suffixes.get(tag.toLowerCase());
+            if (index != null && index > found) {
+                found = index;
+            }
+        }
+        return found < 0 ? "" : types.get(found);
+    }
+
+    private static class DeviceTypes {
+        final List<String> types;
+        final Map<String, Integer> suffixes = new HashMap<>();
+
+        DeviceTypes(List<String> types) {
+            this.types = types;
+            for (int i = 0; i < types.size(); i++) {
+                String type = types.get(i);
+                for (int start = 0; start <= type.length(); start++) {
+                    suffixes.put(type.substring(start), i);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link YandexValueCache} keeps the last value sent to Yandex for every device, capability and property. Every
+ * device of the index gets a dense id with a row of primitive slots: slot 0 is the device itself, every capability
+ * has two slots (its value and its color temperature) and every property one. States are stored as the value Yandex
+ * receives, so the comparison needs no State object.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+public class YandexValueCache {
+    public static final int DEVICE_SLOT = 0;
+    private final BitSet used = new BitSet();
+    private volatile @Nullable Row[] rows = new Row[64];
+
+    /**
+     * Gives the device a dense id and numbers the slots of its capabilities and properties. All slots start unknown,
+     * as nothing has been sent for a new or rebuilt device, so its first value is reported at once.
+     */
+    synchronized void add(YandexDevice device) {
+        if (device.getIndex() >= 0) {
+            return;
+        }
+        int index = used.nextClearBit(0);
+        used.set(index);
+        List<YandexAliceCapabilities> capabilities = device.getCapabilities();
+        List<YandexAliceProperties> properties = device.getProperties();
+        for (int i = 0; i < capabilities.size(); i++) {
+            capabilities.get(i).setSlot(1 + 2 * i);
+        }
+        for (int i = 0; i < properties.size(); i++) {
+            properties.get(i).setSlot(1 + 2 * capabilities.size() + i);
+        }
+        Row row = new Row(device, 1 + 2 * capabilities.size() + properties.size());
+        @Nullable Row[] rows = this.rows;
+        if (index >= rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(index + 1, rows.length * 2));
+        }
+        rows[index] = row;
+        this.rows = rows;
+        device.setIndex(index);
+    }
+
+    /**
+     * Releases the dense id of a device that left the index.
+     */
+    synchronized void remove(YandexDevice device) {
+        int index = device.getIndex();
+        @Nullable Row[] rows = this.rows;
+        if (index >= 0 && index < rows.length) {
+            Row row = rows[index];
+            if (row != null && row.device == device) {
+                rows[index] = null;
+                used.clear(index);
+                device.setIndex(-1);
+            }
+        }
+    }
+
+    /**
+     * Stores the state in the slot and returns true, or returns false if the slot already holds the same value.
+     */
+    public boolean replace(YandexDevice device, int slot, State state) {
+        Row row = row(device);
+        if (row == null) {
+            return true;
+        }
+        synchronized (row) {
+            if (!row.differs(slot, state, 0)) {
+                return false;
+            }
+            row.put(slot, state);
+            return true;
+        }
+    }
+
+    /**
+     * Returns true if the state differs from the value in the slot, numbers by at least the deadband.
+     */
+    public boolean differs(YandexDevice device, int slot, State state, double deadband) {
+        Row row = row(device);
+        if (row == null) {
+            return true;
+        }
+        synchronized (row) {
+            return row.differs(slot, state, deadband);
+        }
+    }
+
+    public void put(YandexDevice device, int slot, State state) {
+        Row row = row(device);
+        if (row != null) {
+            synchronized (row) {
+                row.put(slot, state);
+            }
+        }
+    }
+
+    private @Nullable Row row(YandexDevice device) {
+        int index = device.getIndex();
+        @Nullable Row[] rows = this.rows;
+        if (index >= 0 && index < rows.length) {
+            Row row = rows[index];
+            // a device of an older snapshot may hold an id that is already reused
+            if (row != null && row.device == device) {
+                return row;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value Yandex receives for a non-text state, or NaN for states that are not sent.
+     */
+    private static double toValue(State state) {
+        if (state instanceof OnOffType) {
+            return state.equals(OnOffType.ON) ? 1 : 0;
+        } else if (state instanceof OpenClosedType) {
+            return state.equals(OpenClosedType.OPEN) ? 1 : 0;
+        } else if (state instanceof HSBType) {
+            HSBType hsb = (HSBType) state;
+            return hsb.getHue().intValue() * 1000000.0 + hsb.getSaturation().intValue() * 1000
+                    + hsb.getBrightness().intValue();
+        } else if ((state instanceof DecimalType) || (state instanceof QuantityType)) {
+            return ((Number) state).doubleValue();
+        }
+        return Double.NaN;
+    }
+
+    private static class Row {
+        final YandexDevice device;
+        final double[] values;
+        final @Nullable String[] texts;
+        final BitSet known;
+
+        Row(YandexDevice device, int slots) {
+            this.device = device;
+            this.values = new double[slots];
+            this.texts = new String[slots];
+            this.known = new BitSet(slots);
+        }
+
+        boolean differs(int slot, State state, double deadband) {
+            if (slot < 0 || slot >= values.length || !known.get(slot)) {
+                return true;
+            }
+            String text = texts[slot];
+            if (state instanceof StringType) {
+                return !state.toString().equals(text);
+            }
+            double value = toValue(state);
+            return text != null || !(value == values[slot] || Math.abs(value - values[slot]) < deadband);
+        }
+
+        void put(int slot, State state) {
+            if (slot < 0 || slot >= values.length) {
+                return;
+            }
+            if (state instanceof StringType) {
+                texts[slot] = state.toString();
+                known.set(slot);
+                return;
+            }
+            double value = toValue(state);
+            if (Double.isNaN(value)) {
+                known.clear(slot);
+            } else {
+                values[slot] = value;
+                texts[slot] = null;
+                known.set(slot);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link YandexDiscoveryBenchmark} measures the {@link YandexDiscoveryCache} of {@link YandexService} from 10 to
+ * 5,000 devices, once rebuilt after every registry change and once served from the cache. The time per device of the
+ * rebuild should stay flat across the sizes.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YandexDiscoveryBenchmark {
+    private static final String REQUEST_ID = "benchmark";
+
+    @Param({ "10", "100", "500", "1000", "2500", "5000" })
+    public int devices;
+
+    private YandexRegistryFixture fixture = new YandexRegistryFixture(0);
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new YandexRegistryFixture(devices);
+        fixture.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.stop();
+    }
+
+    /**
+     * The devices are created again and the cached response is rebuilt, as after any change of the registry.
+     */
+    @Benchmark
+    public int rebuild() throws IOException {
+        fixture.changeAll();
+        out.reset();
+        YandexService.writeItemsList(REQUEST_ID, out);
+        return out.size();
+    }
+
+    /**
+     * The cached response is written with the request id around it.
+     */
+    @Benchmark
+    public int cached() throws IOException {
+        out.reset();
+        YandexService.writeItemsList(REQUEST_ID, out);
+        return out.size();
+    }
+}
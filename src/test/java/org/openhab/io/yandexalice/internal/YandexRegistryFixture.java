@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.common.registry.RegistryChangeListener;
+import org.openhab.core.events.Event;
+import org.openhab.core.events.EventPublisher;
+import org.openhab.core.io.net.http.HttpClientFactory;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.items.ItemRegistryChangeListener;
+import org.openhab.core.items.MetadataRegistry;
+import org.openhab.core.items.events.ItemEventFactory;
+import org.openhab.core.library.items.ColorItem;
+import org.openhab.core.library.items.ContactItem;
+import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.RollershutterItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.thing.ThingRegistry;
+import org.openhab.core.thing.link.ItemChannelLinkRegistry;
+import org.openhab.core.types.State;
+import org.osgi.service.http.HttpService;
+
+/**
+ * The {@link YandexRegistryFixture} holds a synthetic item registry of tagged Color, Dimmer, Switch, Number, Contact,
+ * Rollershutter and Group items and starts a {@link YandexService} on it. The registries are backed by plain maps, no
+ * item is linked to a channel and callbacks are refused by the HTTP client, so no request leaves the JVM.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+class YandexRegistryFixture {
+    private static final int KINDS = 7;
+
+    private final Map<String, Item> items = new LinkedHashMap<>();
+    private final List<String> devices = new ArrayList<>();
+    private final List<Change> changes = new ArrayList<>();
+    private final List<RegistryChangeListener<Item>> listeners = new CopyOnWriteArrayList<>();
+    private @Nullable YandexService service;
+
+    /**
+     * A state change of an item with the event openHAB posts for it.
+     */
+    static class Change {
+        final GenericItem item;
+        final State state;
+        final Event event;
+
+        Change(GenericItem item, State state) {
+            this.item = item;
+            this.state = state;
+            this.event = ItemEventFactory.createStateEvent(item.getName(), state);
+        }
+    }
+
+    /**
+     * Creates the given number of devices, the kinds taking turns. Every group device has a switch and a humidity
+     * member item.
+     */
+    YandexRegistryFixture(int count) {
+        for (int i = 0; i < count; i++) {
+            switch (i % KINDS) {
+                case 0:
+                    device(new ColorItem("Color" + i), new HSBType("120,100,50"), new HSBType("240,100,50"),
+                            "Lightbulb");
+                    break;
+                case 1:
+                    device(new DimmerItem("Dimmer" + i), new PercentType(30), new PercentType(60));
+                    break;
+                case 2:
+                    device(new SwitchItem("Switch" + i), OnOffType.ON, OnOffType.OFF, "Lightbulb");
+                    break;
+                case 3:
+                    device(new NumberItem("Number" + i), new DecimalType(21), new DecimalType(23), "Temperature");
+                    break;
+                case 4:
+                    device(new ContactItem("Contact" + i), OpenClosedType.OPEN, OpenClosedType.CLOSED, "Door");
+                    break;
+                case 5:
+                    device(new RollershutterItem("Rollershutter" + i), new PercentType(20), new PercentType(80));
+                    break;
+                default:
+                    group(new GroupItem("Group" + i));
+                    break;
+            }
+        }
+    }
+
+    private void device(GenericItem item, State state, State other, String... tags) {
+        item.setLabel(item.getName());
+        item.addTag("Yandex");
+        item.addTags(tags);
+        add(item, state, other);
+        devices.add(item.getName());
+    }
+
+    private void group(GroupItem group) {
+        group.setLabel(group.getName());
+        group.addTags("Yandex", "light");
+        SwitchItem power = new SwitchItem(group.getName() + "_Power");
+        NumberItem humidity = new NumberItem(group.getName() + "_Humidity");
+        humidity.addTag(YandexDevice.FLOAT_HUMIDITY);
+        for (GenericItem member : List.of(power, humidity)) {
+            member.setLabel(member.getName());
+            member.addGroupName(group.getName());
+            group.addMember(member);
+        }
+        items.put(group.getName(), group);
+        add(power, OnOffType.ON, OnOffType.OFF);
+        add(humidity, new DecimalType(40), new DecimalType(60));
+        devices.add(group.getName());
+    }
+
+    private void add(GenericItem item, State state, State other) {
+        item.setState(state);
+        items.put(item.getName(), item);
+        // the first change moves the item away from its initial state
+        changes.add(new Change(item, other));
+        changes.add(new Change(item, state));
+    }
+
+    /**
+     * Returns the names of the items that are devices.
+     */
+    List<String> getDevices() {
+        return devices;
+    }
+
+    /**
+     * Returns two state changes per item fed to the devices, each pair ending in the initial state.
+     */
+    List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Starts the service on the registries, with its files in a temporary userdata folder.
+     */
+    YandexService start() throws IOException {
+        System.setProperty(OpenHAB.USERDATA_DIR_PROG_ARGUMENT,
+                Files.createTempDirectory("yandexalice").toString());
+        ItemRegistry itemRegistry = proxy(ItemRegistry.class, this::invokeItemRegistry);
+        HttpClientFactory httpClientFactory = proxy(HttpClientFactory.class,
+                (method, args) -> method.getReturnType() == HttpClient.class ? new OfflineHttpClient() : null);
+        EventPublisher eventPublisher = event -> {
+        };
+        YandexService service = new YandexService(httpClientFactory, itemRegistry, eventPublisher,
+                proxy(HttpService.class, (method, args) -> null), proxy(ThingRegistry.class, (method, args) -> null),
+                proxy(ItemChannelLinkRegistry.class, (method, args) -> null),
+                proxy(MetadataRegistry.class, (method, args) -> null));
+        this.service = service;
+        return service;
+    }
+
+    void stop() {
+        YandexService service = this.service;
+        if (service != null) {
+            service.deactivate();
+            this.service = null;
+        }
+    }
+
+    /**
+     * Tells the listeners of the registry that all items changed, so the devices are built again.
+     */
+    void changeAll() {
+        Collection<String> names = items.keySet();
+        for (RegistryChangeListener<Item> listener : listeners) {
+            if (listener instanceof ItemRegistryChangeListener) {
+                ((ItemRegistryChangeListener) listener).allItemsChanged(names);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private @Nullable Object invokeItemRegistry(Method method, @Nullable Object[] args) throws ItemNotFoundException {
+        switch (method.getName()) {
+            case "getItem":
+                Item item = items.get((String) args[0]);
+                if (item == null) {
+                    throw new ItemNotFoundException((String) args[0]);
+                }
+                return item;
+            case "get":
+                return items.get((String) args[0]);
+            case "getAll":
+                return items.values();
+            case "getItems":
+                return args.length == 0 ? items.values() : List.of();
+            case "addRegistryChangeListener":
+                listeners.add((RegistryChangeListener<Item>) args[0]);
+                return null;
+            case "removeRegistryChangeListener":
+                listeners.remove(args[0]);
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A handler of the calls to a registry, the calls of Object and calls returning nothing useful are answered by
+     * {@link #proxy}.
+     */
+    @FunctionalInterface
+    private interface Handler {
+        @Nullable
+        Object invoke(Method method, @Nullable Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (self, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "toString":
+                    return type.getSimpleName();
+                default:
+                    Object result = handler.invoke(method, args != null ? args : new Object[0]);
+                    return result != null ? result : empty(method.getReturnType());
+            }
+        });
+        return type.cast(proxy);
+    }
+
+    private static @Nullable Object empty(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == Set.class || type == Collection.class) {
+            return Set.of();
+        } else if (type == List.class) {
+            return List.of();
+        } else if (type == Stream.class) {
+            return Stream.empty();
+        }
+        return null;
+    }
+
+    /**
+     * Refuses every request, the dispatcher counts it as failed like an unreachable server.
+     */
+    private static class OfflineHttpClient extends HttpClient {
+        @Override
+        public Request newRequest(String uri) {
+            throw new IllegalStateException("The fixture does not send requests");
+        }
+    }
+}
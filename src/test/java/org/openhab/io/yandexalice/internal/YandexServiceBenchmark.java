@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010-2024 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.io.yandexalice.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link YandexServiceBenchmark} measures the request and event paths of {@link YandexService} on a
+ * {@link YandexRegistryFixture}: devices discovery, devices query, devices action and item state events. Run it with
+ * {@code mvn -Pbenchmark test}, which adds the gc profiler.
+ *
+ * @author Petr Shatsillo - Initial contribution
+ */
+@NonNullByDefault
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YandexServiceBenchmark {
+    private static final String REQUEST_ID = "benchmark";
+
+    @Param({ "10", "100", "1000", "10000" })
+    public int devices;
+
+    private YandexRegistryFixture fixture = new YandexRegistryFixture(0);
+    private @Nullable YandexService service;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private byte[] query = new byte[0];
+    private byte[] action = new byte[0];
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new YandexRegistryFixture(devices);
+        service = fixture.start();
+        JSONArray queried = new JSONArray();
+        JSONArray actions = new JSONArray();
+        for (String id : fixture.getDevices()) {
+            queried.put(new JSONObject().put("id", id));
+            if (id.startsWith("Switch")) {
+                actions.put(action(id, YandexDevice.CAP_ON_OFF, "on", true));
+            } else if (id.startsWith("Dimmer")) {
+                actions.put(action(id, YandexDevice.CAP_RANGE, YandexDevice.RANGE_BRIGHTNESS, 40));
+            }
+        }
+        query = new JSONObject().put("devices", queried).toString().getBytes(StandardCharsets.UTF_8);
+        action = new JSONObject().put("payload", new JSONObject().put("devices", actions)).toString()
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static JSONObject action(String id, String type, String instance, Object value) {
+        JSONObject state = new JSONObject().put("instance", instance).put("value", value);
+        return new JSONObject().put("id", id).put("capabilities",
+                new JSONArray().put(new JSONObject().put("type", type).put("state", state)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.stop();
+    }
+
+    /**
+     * Devices created again for every item, as after a change of the registry, and the discovery response rebuilt.
+     */
+    @Benchmark
+    public int discovery() throws IOException {
+        fixture.changeAll();
+        out.reset();
+        YandexService.writeItemsList(REQUEST_ID, out);
+        return out.size();
+    }
+
+    /**
+     * The state of every device.
+     */
+    @Benchmark
+    public int query() throws IOException {
+        out.reset();
+        YandexService.writeItemState(new ByteArrayInputStream(query), REQUEST_ID, out);
+        return out.size();
+    }
+
+    /**
+     * Commands for the switches and dimmers.
+     */
+    @Benchmark
+    public int action() throws IOException {
+        out.reset();
+        YandexService.writeActionResult(new ByteArrayInputStream(action), REQUEST_ID, out);
+        return out.size();
+    }
+
+    /**
+     * Two state changes of every item fed to a device, each reported to Yandex unless the limiter holds it back.
+     */
+    @Benchmark
+    public void receive() {
+        YandexService service = Objects.requireNonNull(this.service);
+        for (YandexRegistryFixture.Change change : fixture.getChanges()) {
+            change.item.setState(change.state);
+            service.receive(change.event);
+        }
+    }
+}